@@ -19,6 +19,15 @@ public class CommsGradlePlugin implements Plugin<Project> {
         }
     }
 
+    public static File getLibsDir(Project project) {
+        BasePluginConvention baseConv = project.getConvention().findByType(BasePluginConvention.class);
+        if(baseConv != null) {
+            return baseConv.getLibsDir();
+        } else {
+            return new File(project.getBuildDir(), "libs");
+        }
+    }
+
     public static File getGeneratedDir(File buildDir, String name) {
         return new File(buildDir, String.format("generated-src/%s", name));
     }
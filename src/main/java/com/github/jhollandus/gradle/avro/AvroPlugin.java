@@ -1,23 +1,31 @@
 package com.github.jhollandus.gradle.avro;
 
-import com.commercehub.gradle.plugin.avro.GenerateAvroJavaTask;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.github.jhollandus.gradle.CommsExtension;
+import com.github.jhollandus.gradle.Exceptions;
 import com.github.jhollandus.gradle.CommsGradlePlugin;
 import com.github.jhollandus.gradle.avro.model.CommsAvroModel;
 import com.github.jhollandus.gradle.avro.task.AvroIdlToSchemata;
+import com.github.jhollandus.gradle.avro.task.AvroSchemaToJava;
 import com.github.jhollandus.gradle.avro.task.AvroSchemaValidate;
 import org.apache.avro.compiler.specific.SpecificCompiler;
 import org.apache.avro.generic.GenericData;
+import org.gradle.api.GradleException;
+import org.gradle.api.JavaVersion;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.plugins.ExtensionContainer;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.publish.PublishingExtension;
 import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.bundling.Zip;
 import org.gradle.api.tasks.compile.JavaCompile;
 import org.gradle.model.Defaults;
@@ -29,20 +37,71 @@ import org.gradle.model.RuleSource;
 import org.gradle.plugins.ide.idea.GenerateIdeaModule;
 import org.gradle.plugins.ide.idea.IdeaPlugin;
 import org.gradle.plugins.ide.idea.model.IdeaModule;
+import org.gradle.workers.IsolationMode;
 
+import javax.lang.model.SourceVersion;
 import java.io.File;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 public class CommsAvroPlugin implements Plugin<Project> {
     private static final Logger logger = Logging.getLogger(CommsAvroPlugin.class);
+    public static final String AVRO_COMPILER_CONFIGURATION = "avroCompiler";
+    public static final String AVRO_BINDING_CONFIGURATION = "avroBinding";
+    public static final String BINDING_CLASSIFIER = "avro";
+    public static final String PLUGIN_PROPERTIES = "avro-plugin.properties";
 
     @Override
     public void apply(Project project) {
+        project.getConfigurations().create(AVRO_COMPILER_CONFIGURATION, conf -> {
+            conf.setVisible(false);
+            conf.setDescription("The Avro compiler used to parse idl and generate bindings.");
+        });
+        project.getConfigurations().create(AVRO_BINDING_CONFIGURATION, conf -> {
+            conf.setVisible(false);
+            conf.setDescription("The Avro runtime the generated bindings are compiled against.");
+        });
+    }
+
+    /**
+     * The Avro version the plugin was built with, recorded in the plugin properties at build time.
+     */
+    public static String pluginAvroVersion() {
+        return Exceptions.asGradleException(() -> {
+            Properties props = new Properties();
+            try (InputStream in = CommsAvroPlugin.class.getResourceAsStream(PLUGIN_PROPERTIES)) {
+                props.load(in);
+            }
+            return props.getProperty("avroVersion");
+        });
+    }
+
+    /**
+     * Checks, parsing and code generation rely on the Avro 1.8 property and default value APIs.
+     */
+    private static void requireSupportedAvroVersion(String avroVersion) {
+        String[] parts = avroVersion.split("[.-]");
+        boolean supported;
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            supported = major > 1 || (major == 1 && minor >= 8);
+        } catch (NumberFormatException e) {
+            supported = false;
+        }
+
+        if (!supported) {
+            throw new GradleException(String.format("Unsupported avroVersion '%s', Avro 1.8 or later is required.", avroVersion));
+        }
     }
 
     public static class Rules extends RuleSource {
@@ -54,15 +113,22 @@ public class CommsAvroPlugin implements Plugin<Project> {
         @Defaults
         void setDefaults(CommsAvroModel model, @Path("buildDir") File buildDir) {
 
+            model.setAvroVersion(pluginAvroVersion());
+            model.setCompilerIsolation(IsolationMode.PROCESS);
+            model.setSharedFragments(false);
+
             model.getBindings().setStringType(GenericData.StringType.String);
             model.getBindings().setCreateSetters(false);
             model.getBindings().setEnabled(true);
             model.getBindings().setFieldVisibility(SpecificCompiler.FieldVisibility.PRIVATE);
             model.getBindings().setOutputCharacterEncoding(StandardCharsets.UTF_8.name());
+            model.getBindings().setRegistryEnabled(true);
 
             model.getValidation().setEnabled(true);
             model.getValidation().setCompareAll(true);
             model.getValidation().setCompatibility(AvroSchemaValidate.Compatibility.BACKWARDS);
+            model.getValidation().setBaselineSource(AvroSchemaValidate.BaselineSource.GIT);
+            model.getValidation().setBaselineVersions(new ArrayList<>());
 
             model.getIdl().getSource().srcDir(String.format("src/%s/idl", model.getName()))
                     .include("**/*." + AvroIdlToSchemata.AVRO_IDL_EXTENSION)
@@ -79,18 +145,42 @@ public class CommsAvroPlugin implements Plugin<Project> {
         void addTasks(ModelMap<Task> tasks, CommsAvroModel model, ExtensionContainer extensions) {
             Project project = extensions.getByType(CommsExtension.class).getProject();
 
+            String avroVersion = model.getAvroVersion();
+            requireSupportedAvroVersion(avroVersion);
+            if (model.getCompilerIsolation() == IsolationMode.NONE && !avroVersion.equals(pluginAvroVersion())) {
+                logger.warn("avroVersion '{}' is ignored without compiler isolation, using the plugin's Avro {}",
+                        avroVersion, pluginAvroVersion());
+            }
+            Configuration avroCompiler = project.getConfigurations().getByName(AVRO_COMPILER_CONFIGURATION);
+            avroCompiler.defaultDependencies(deps ->
+                    deps.add(project.getDependencies().create("org.apache.avro:avro-compiler:" + avroVersion)));
+            Configuration avroBinding = project.getConfigurations().getByName(AVRO_BINDING_CONFIGURATION);
+            avroBinding.defaultDependencies(deps ->
+                    deps.add(project.getDependencies().create("org.apache.avro:avro:" + avroVersion)));
+
             //create Idl task
             tasks.create("transformAvroIdl", AvroIdlToSchemata.class, task -> {
                 logger.error("transformAvroIdl source: {}", model.getIdl().getSource().getSrcDirs());
                 task.source(model.getIdl().getSource());
                 task.setDest(model.getSchema().getSource().getSrcDirs().iterator().next());
+                task.setCompilerClasspath(avroCompiler);
+                task.setIsolationMode(model.getCompilerIsolation().name());
+                task.setSharedFragments(model.getSharedFragments());
             });
 
             tasks.create("validateAvroSchema", AvroSchemaValidate.class, task -> {
                 task.source(model.getSchema().getSource());
                 task.setCompatibility(model.getValidation().getCompatibility().name());
                 task.setCompareAll(model.getValidation().getCompareAll());
+                task.setBaselineSource(model.getValidation().getBaselineSource().name());
+                task.setSharedSchemas(AvroPluginUtils.isInProcess(model.getCompilerIsolation().name()));
                 task.setEnabled(model.getValidation().getEnabled());
+
+                //model views are closed once this rule completes, capture what is needed for lazy resolution
+                List<String> baselineVersions = new ArrayList<>(model.getValidation().getBaselineVersions());
+                File baselineDir = model.getValidation().getBaselineDir();
+                task.setBaselines(project.files((Callable<List<File>>) () ->
+                        AvroPluginUtils.resolveBaselines(project, baselineVersions, baselineDir)));
                 task.dependsOn("transformAvroIdl");
             });
 
@@ -111,14 +201,21 @@ public class CommsAvroPlugin implements Plugin<Project> {
                 }
             });
 
-            tasks.create("bindingAvroJava", GenerateAvroJavaTask.class, task -> {
+            tasks.create("bindingAvroJava", AvroSchemaToJava.class, task -> {
                 task.setSource(model.getSchema().getSource());
                 task.dependsOn("validateAvroSchema");
                 task.setOutputDir(model.getGeneratedJava().getSource().getSrcDirs().iterator().next());
-                task.setFieldVisibility(model.getBindings().getFieldVisibility());
-                task.setStringType(model.getBindings().getStringType());
-                task.setCreateSetters(model.getBindings().getCreateSetters().toString());
+                task.setFieldVisibility(model.getBindings().getFieldVisibility().name());
+                task.setStringType(model.getBindings().getStringType().name());
+                task.setCreateSetters(model.getBindings().getCreateSetters());
                 task.setOutputCharacterEncoding(model.getBindings().getOutputCharacterEncoding());
+                task.setCompilerClasspath(avroCompiler);
+                task.setIsolationMode(model.getCompilerIsolation().name());
+
+                if (model.getBindings().getRegistryEnabled()) {
+                    task.setRegistryClass(model.getBindings().getRegistryClass() != null ?
+                            model.getBindings().getRegistryClass() : defaultRegistryClass(project));
+                }
 
                 if (model.getBindings().getTemplateDirectory() != null) {
                     task.setTemplateDirectory(model.getBindings().getTemplateDirectory().getAbsolutePath() + File.separator);
@@ -127,11 +224,59 @@ public class CommsAvroPlugin implements Plugin<Project> {
                 task.setEnabled(model.getBindings().getEnabled());
             });
 
+            //generated bindings are compiled on their own so hand written code never recompiles them
+            File bindingClassesDir = new File(project.getBuildDir(), "classes/avro");
+            tasks.create("compileAvroJava", JavaCompile.class, task -> {
+                task.source(model.getGeneratedJava().getSource());
+                task.dependsOn("bindingAvroJava");
+                task.setClasspath(avroBinding);
+                task.setDestinationDir(bindingClassesDir);
+                //follow the project's java settings so the published jar loads wherever the rest of the project does,
+                //without the java plugin there are none and the bindings target the running jvm
+                task.setSourceCompatibility(JavaVersion.current().toString());
+                task.setTargetCompatibility(JavaVersion.current().toString());
+                project.getPlugins().withType(JavaPlugin.class, java -> {
+                    JavaPluginConvention javaConv = project.getConvention().getPlugin(JavaPluginConvention.class);
+                    task.setSourceCompatibility(javaConv.getSourceCompatibility().toString());
+                    task.setTargetCompatibility(javaConv.getTargetCompatibility().toString());
+                });
+                task.getOptions().setEncoding(model.getBindings().getOutputCharacterEncoding());
+                task.setEnabled(model.getBindings().getEnabled());
+            });
+
+            boolean bindingsEnabled = model.getBindings().getEnabled();
+            String publicationName = model.getSchema().getName();
+            tasks.create("jarAvroJava", Jar.class, task -> {
+                task.from(bindingClassesDir);
+                task.dependsOn("compileAvroJava");
+                task.setDestinationDir(CommsGradlePlugin.getLibsDir(project));
+                task.setBaseName(project.getName());
+                task.setClassifier(BINDING_CLASSIFIER);
+                task.setVersion(project.getVersion().toString());
+                task.setEnabled(bindingsEnabled);
+
+                PublishingExtension pubExt = extensions.findByType(PublishingExtension.class);
+                if (pubExt != null && bindingsEnabled) {
+                    pubExt.getPublications().withType(MavenPublication.class)
+                            .matching(mvnPub -> mvnPub.getName().equals(publicationName))
+                            .all(mvnPub -> mvnPub.artifact(task));
+                }
+            });
+
+            FileCollection bindingJar = project.files((Callable<Task>) () -> project.getTasks().getByName("jarAvroJava"));
             project.getTasks().withType(JavaCompile.class, compile -> {
-                compile.source(model.getGeneratedJava().getSource());
-                compile.dependsOn("zipAvroSchema", "bindingAvroJava");
+                if (!compile.getName().equals("compileAvroJava")) {
+                    if (bindingsEnabled) {
+                        compile.setClasspath(compile.getClasspath() == null ? bindingJar : compile.getClasspath().plus(bindingJar));
+                    }
+                    compile.dependsOn("zipAvroSchema");
+                }
             });
 
+            if (bindingsEnabled) {
+                project.getPlugins().withType(JavaPlugin.class, java ->
+                        project.getDependencies().add(JavaPlugin.RUNTIME_CONFIGURATION_NAME, bindingJar));
+            }
         }
 
         @Mutate
@@ -178,6 +323,39 @@ public class CommsAvroPlugin implements Plugin<Project> {
         }
 
 
+        /**
+         * The project group as package with a class named after the project, 'my-schemas' becomes MySchemasAvroRegistry.
+         */
+        private static String defaultRegistryClass(Project project) {
+            StringBuilder className = new StringBuilder();
+            for (String part : project.getName().split("[^A-Za-z0-9]+")) {
+                if (!part.isEmpty()) {
+                    className.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+                }
+            }
+            className.append("AvroRegistry");
+
+            List<String> packageName = new ArrayList<>();
+            for (String segment : project.getGroup().toString().toLowerCase().split("\\.")) {
+                if (!segment.isEmpty()) {
+                    packageName.add(javaIdentifier(segment.replaceAll("[^a-z0-9]", "_")));
+                }
+            }
+            if (packageName.isEmpty()) {
+                packageName.add("avro");
+            }
+
+            return String.join(".", packageName) + "." + javaIdentifier(className.toString());
+        }
+
+        /**
+         * Group and project names may start with a digit or be a keyword, e.g. 'com.3m' or '123-schemas', such parts
+         * are prefixed with '_'.
+         */
+        private static String javaIdentifier(String name) {
+            return SourceVersion.isName(name) ? name : "_" + name;
+        }
+
         private File generatedAvroSrcDir(File buildDir) {
             return CommsGradlePlugin.getGeneratedDir(buildDir, "avro");
         }
@@ -1,6 +1,15 @@
 package com.github.jhollandus.gradle.avro;
 
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.file.FileCollection;
+import org.gradle.workers.IsolationMode;
+import org.gradle.workers.WorkerConfiguration;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import static java.lang.String.format;
@@ -13,4 +22,43 @@ public class AvroPluginUtils {
         String prefix = format("%s\\/?", Pattern.quote(root.getAbsolutePath()));
         return target.getAbsolutePath().replaceFirst(prefix, "");
     }
+
+    /**
+     * Locates the baseline schema artifacts for the given versions, either in the baseline directory as
+     * '&lt;name&gt;-&lt;version&gt;.zip' or an unpacked '&lt;version&gt;' directory, or in the project repositories.
+     */
+    public static List<File> resolveBaselines(Project project, List<String> versions, File baselineDir) {
+        List<File> baselines = new ArrayList<>();
+        for (String version : versions) {
+            if (baselineDir != null) {
+                File zip = new File(baselineDir, format("%s-%s.zip", project.getName(), version));
+                baselines.add(zip.exists() ? zip : new File(baselineDir, version));
+            } else {
+                Dependency dependency = project.getDependencies().create(format("%s:%s:%s@zip",
+                        project.getGroup(), project.getName(), version));
+                Configuration baseline = project.getConfigurations().detachedConfiguration(dependency);
+                baseline.setTransitive(false);
+                baselines.addAll(baseline.resolve());
+            }
+        }
+
+        return baselines;
+    }
+
+    /**
+     * Without isolation the Avro compiler code runs directly in the task using the plugin's Avro, which lets all avro
+     * tasks share parsed schemas through the {@link ParsedSchemaCache} of the build.
+     */
+    public static boolean isInProcess(String isolationMode) {
+        return IsolationMode.valueOf(isolationMode.toUpperCase()) == IsolationMode.NONE;
+    }
+
+    /**
+     * Isolates a worker running Avro compiler code so it loads the module's Avro version instead of the plugin's.
+     * Process workers are reused by gradle between builds as long as their classpath stays the same.
+     */
+    public static void isolateAvroWorker(WorkerConfiguration config, String isolationMode, FileCollection compilerClasspath) {
+        config.setIsolationMode(IsolationMode.valueOf(isolationMode.toUpperCase()));
+        config.classpath(compilerClasspath);
+    }
 }
@@ -1,11 +1,11 @@
 package com.github.jhollandus.gradle.avro;
 
-import avro.shaded.com.google.common.collect.Maps;
 import org.apache.avro.Schema;
 import org.gradle.api.GradleException;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +54,6 @@ public class AvroValidationException extends GradleException {
     public class Spec {
         public String message = "No Message Available";
         public String description;
-        public Map<String, Object> props = Maps.newLinkedHashMap();
+        public Map<String, Object> props = new LinkedHashMap<>();
     }
 }
@@ -0,0 +1,86 @@
+package com.github.jhollandus.gradle.avro;
+
+import org.apache.avro.Schema;
+import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static com.github.jhollandus.gradle.Exceptions.asGradleException;
+
+/**
+ * Parsed schemas keyed by the hash of their file content. Without compiler isolation the avro tasks of a build share
+ * the cache of {@link #forProject(Project)}, isolated workers share the cache of their worker process through
+ * {@link #forWorker()}.
+ */
+public class ParsedSchemaCache {
+    //dropped along with the build's Gradle instance
+    private static final Map<Gradle, ParsedSchemaCache> BUILD_CACHES = new WeakHashMap<>();
+    //worker daemons outlive builds, only the most recently used schemas are kept
+    static final int WORKER_CACHE_SIZE = 1024;
+    private static final ParsedSchemaCache WORKER_CACHE = new ParsedSchemaCache(WORKER_CACHE_SIZE);
+
+    private final Map<String, Schema> schemas;
+
+    ParsedSchemaCache(int maxSize) {
+        this.schemas = Collections.synchronizedMap(new LinkedHashMap<String, Schema>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Schema> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * @return the cache shared by all projects of the build
+     */
+    public static ParsedSchemaCache forProject(Project project) {
+        synchronized (BUILD_CACHES) {
+            return BUILD_CACHES.computeIfAbsent(project.getGradle(), gradle -> new ParsedSchemaCache(Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * @return the cache of the current worker process, schemas written by idl workers are reused by binding workers
+     * that run in the same process
+     */
+    public static ParsedSchemaCache forWorker() {
+        return WORKER_CACHE;
+    }
+
+    /**
+     * @return the schema in the file, parsed only if no schema with the same content is cached
+     */
+    public Schema parse(File schemaFile) {
+        byte[] content = asGradleException(() -> Files.readAllBytes(schemaFile.toPath()));
+        String hash = contentHash(content);
+        Schema schema = schemas.get(hash);
+        if (schema == null) {
+            //always use new parser to erase any previous history, schemas are fully contextual
+            schema = asGradleException(() -> new Schema.Parser().parse(new ByteArrayInputStream(content)));
+            schemas.put(hash, schema);
+        }
+
+        return schema;
+    }
+
+    /**
+     * Registers an already built schema for the content it was written out as.
+     */
+    public void put(byte[] content, Schema schema) {
+        schemas.put(contentHash(content), schema);
+    }
+
+    public static String contentHash(byte[] content) {
+        byte[] digest = asGradleException(() -> MessageDigest.getInstance("SHA-256").digest(content));
+        return new BigInteger(1, digest).toString(16);
+    }
+}
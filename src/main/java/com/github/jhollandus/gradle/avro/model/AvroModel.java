@@ -4,12 +4,19 @@ import org.gradle.api.Named;
 import org.gradle.language.base.LanguageSourceSet;
 import org.gradle.language.java.JavaSourceSet;
 import org.gradle.model.Managed;
+import org.gradle.workers.IsolationMode;
 
 @Managed
 public interface CommsAvroModel extends Named {
     LanguageSourceSet getIdl();
     //void setIdl(LanguageSourceSet avroIdlSourceSet);
 
+    /**
+     * Parse each idl fragment once and import it where included rather than including its text.
+     */
+    Boolean getSharedFragments();
+    void setSharedFragments(Boolean sharedFragments);
+
     LanguageSourceSet getSchema();
     //void setSchema(LanguageSourceSet avroSchemaSourceSet);
 
@@ -20,4 +27,25 @@ public interface CommsAvroModel extends Named {
 
     SchemaValidation getValidation();
     //void setValidation(SchemaValidation validation);
+
+    /**
+     * Avro version (1.8 or later) used to parse idl, check and write the resulting schemas and generate bindings for
+     * this module. Compatibility checks in validateAvroSchema always use the Avro version the plugin was built with.
+     * <p>
+     * Unless the avroCompiler and avroBinding configurations are given dependencies of their own, the project needs a
+     * repository that serves {@code org.apache.avro:avro-compiler} and {@code org.apache.avro:avro} in this version.
+     */
+    String getAvroVersion();
+    void setAvroVersion(String avroVersion);
+
+    /**
+     * How the Avro compiler workers are isolated from the build, PROCESS keeps warm worker daemons between builds and
+     * binding generation reuses the schemas the idl workers of the same daemon built. NONE runs the compiler in the
+     * build with the plugin's Avro, schemas are then parsed once and shared by all tasks including validation.
+     * <p>
+     * PROCESS and CLASSLOADER workers load {@code org.apache.avro:avro-compiler} of the avroVersion from the
+     * project's repositories.
+     */
+    IsolationMode getCompilerIsolation();
+    void setCompilerIsolation(IsolationMode compilerIsolation);
 }
@@ -28,4 +28,13 @@ public interface JavaBinding extends Named {
 
     Boolean getCreateSetters();
     void setCreateSetters(Boolean createSetters);
+
+    Boolean getRegistryEnabled();
+    void setRegistryEnabled(Boolean registryEnabled);
+
+    /**
+     * Fully qualified name of the generated fingerprint registry, defaults to one derived from the project group and name.
+     */
+    String getRegistryClass();
+    void setRegistryClass(String registryClass);
 }
@@ -4,6 +4,9 @@ import com.github.jhollandus.gradle.avro.task.AvroSchemaValidate;
 import org.gradle.api.Named;
 import org.gradle.model.Managed;
 
+import java.io.File;
+import java.util.List;
+
 @Managed
 public interface SchemaValidation extends Named {
     Boolean getEnabled();
@@ -14,4 +17,21 @@ public interface SchemaValidation extends Named {
 
     Boolean getCompareAll();
     void setCompareAll(Boolean compareAll);
+
+    AvroSchemaValidate.BaselineSource getBaselineSource();
+    void setBaselineSource(AvroSchemaValidate.BaselineSource baselineSource);
+
+    /**
+     * Previously published schema versions to validate against when using {@link AvroSchemaValidate.BaselineSource#ARTIFACT},
+     * listed from oldest to newest.
+     */
+    List<String> getBaselineVersions();
+    void setBaselineVersions(List<String> baselineVersions);
+
+    /**
+     * Optional directory holding baseline artifacts, either as '&lt;name&gt;-&lt;version&gt;.zip' or as an unpacked
+     * '&lt;version&gt;' directory. When not set the baselines are resolved from the project repositories.
+     */
+    File getBaselineDir();
+    void setBaselineDir(File baselineDir);
 }
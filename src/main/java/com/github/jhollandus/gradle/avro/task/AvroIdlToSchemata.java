@@ -1,21 +1,23 @@
 package com.github.jhollandus.gradle.avro.task;
 
-import avro.shaded.com.google.common.collect.ImmutableMap;
+import com.github.jhollandus.gradle.avro.AvroPluginUtils;
 import com.github.jhollandus.gradle.avro.AvroValidationException;
-import org.apache.avro.AvroRuntimeException;
-import org.apache.avro.Schema;
-import org.apache.avro.compiler.idl.Idl;
+import com.github.jhollandus.gradle.avro.ParsedSchemaCache;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.SourceTask;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
 
+import javax.inject.Inject;
 import java.io.File;
-import java.io.PrintWriter;
-import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -36,136 +38,126 @@ public class AvroIdlToSchemata extends SourceTask {
     public static final String AVRO_SCHEMA_EXTENSION = "avsc";
 
     private static final Pattern INCLUDE_PATTERN = Pattern.compile("^.*@include\\(['\"](.*?)[\"']\\).*$");
+    static final String FRAGMENT_NAMESPACE = "com.github.jhollandus.gradle.avro.fragment";
+    private static final String FRAGMENT_PROTOCOL = "Fragment";
+    private static final Pattern PROTOCOL_NAMESPACE_PATTERN =
+            Pattern.compile("@namespace\\(\\s*['\"](.*?)['\"]\\s*\\)\\s*protocol\\s");
 
-    private Map<String, Schema> namespaceMap = new HashMap<>();
+    private Map<String, String> namespaceMap = new HashMap<>();
     private Map<String, String> includesCache = new HashMap<>();
+    private Map<File, File> wrappedFragments = new HashMap<>();
+    private File idlDir;
 
     @OutputDirectory
     private File dest;
 
-    public File getDest() {
-        return dest;
-    }
+    private FileCollection compilerClasspath;
+    private String isolationMode;
+    private boolean sharedFragments;
 
-    public void setDest(File dest) {
-        this.dest = dest;
+    @Inject
+    public WorkerExecutor getWorkerExecutor() {
+        throw new UnsupportedOperationException();
     }
 
-    @TaskAction
-    public void transform() {
-        //clear out existing schemas
-        asGradleException(() ->
-            Files.walk(getDest().toPath())
-                 .map(Path::toFile)
-                 .filter(f -> f.exists() && f.getAbsolutePath().endsWith(AVRO_SCHEMA_EXTENSION))
-                 .forEach(f -> {
-                     if(!f.delete()) {
-                         getLogger().warn("Failed to delete old avro schema file: '{}'", f);
-                     }
-                 }));
-
-        getSource().filter(f -> f.getName().endsWith("." + AVRO_IDL_EXTENSION)).getFiles()
-                .stream()
-                .map(this::toIdl)
-                .flatMap(idl -> idl.getSchemas().stream())
-                .filter(this::validateSchema)
-                .filter(schema -> !schema.isEmbedded())
-                .forEach(schema ->
-                    asGradleException(() -> {
-                        try (PrintWriter pw = new PrintWriter(new File(dest, schema.fileName()))) {
-                            pw.println(schema.schema.toString(true));
-                        }
-                }));
+    @Classpath
+    public FileCollection getCompilerClasspath() {
+        return compilerClasspath;
     }
 
-    private Boolean validateSchema(SchemaConversion schema) {
-        validateFields(schema.idlConversion.idlFile, schema.schema);
-
-        if(!schema.isEmbedded()) {
-            validateTopLevelSchema(schema.idlConversion.idlFile, schema.schema);
-        }
+    public void setCompilerClasspath(FileCollection compilerClasspath) {
+        this.compilerClasspath = compilerClasspath;
+    }
 
-        return true;
+    @Input
+    public String getIsolationMode() {
+        return isolationMode;
     }
 
-    private Boolean validateTopLevelSchema(File idlFile, Schema schema) {
-        Schema.Field header = schema.getField(SCHEMA_FIELD_HEADER);
-        if (header == null || !header.schema().getName().equals(SCHEMA_HEADER_NAME)) {
-            throw new AvroValidationException(spec -> {
-                spec.message = "Header Missing in Record!";
-                spec.description = String.join(System.lineSeparator(),
-                        "All top level records must contain a 'header' field of type CommsHeader.",
-                        "If the record is to be used as an include only then mark it with @embedded(true).");
-                spec.props.putAll(ImmutableMap.of("source", idlFile, "schema", schema));
-            });
-        }
+    public void setIsolationMode(String isolationMode) {
+        this.isolationMode = isolationMode;
+    }
 
-        if (namespaceMap.containsKey(schema.getNamespace())) {
+    /**
+     * When enabled each fragment is parsed once per worker process and the files including it are parsed with its
+     * types instead of its text. Fragment types without a namespace take the including file's namespace.
+     */
+    @Input
+    public boolean isSharedFragments() {
+        return sharedFragments;
+    }
 
-            throw new AvroValidationException(spec -> {
-                spec.message = "Top Level Records Share a Namespace!";
-                spec.description = String.join(System.lineSeparator(),
-                        "Each top level record (not marked with @embedded(true)) must be in their own namespace.",
-                        "this is required in order to generate language bindings without causing name collisions.");
-                spec.props.putAll(ImmutableMap.of(
-                        "source", idlFile,
-                        "schema1", schema,
-                        "schema2", namespaceMap.get(schema.getNamespace())));
-            });
-        }
+    public void setSharedFragments(boolean sharedFragments) {
+        this.sharedFragments = sharedFragments;
+    }
 
-        getLogger().debug("Adding namespace '{}'", schema.getNamespace());
-        namespaceMap.put(schema.getNamespace(), schema);
+    public File getDest() {
+        return dest;
+    }
 
-        return true;
+    public void setDest(File dest) {
+        this.dest = dest;
     }
 
+    @TaskAction
+    public void transform() {
+        //generate into a staging area first, only changed files are moved into place
+        File staging = new File(getTemporaryDir(), "staging");
+        getProject().delete(staging);
+        asGradleException(() -> Files.createDirectories(staging.toPath()));
+
+        idlDir = new File(getTemporaryDir(), "idl");
+        getProject().delete(idlDir);
+        getProject().mkdir(idlDir);
+
+        List<IdlCompileSpec> specs = new ArrayList<>();
+        for (File idlFile : getSource().filter(f -> f.getName().endsWith("." + AVRO_IDL_EXTENSION)).getFiles()) {
+            specs.add(toIdl(idlFile, staging, specs.size()));
+        }
 
-    private Boolean validateFields(File idlFile, Schema schema) {
-        getLogger().debug("Validating fields for schema '{}'", schema.getName());
+        //parsing and checks happen in workers, wait for all of them before looking at their output
+        awaitIdl();
+        specs.forEach(this::validateNamespaces);
 
-        List<Schema.Field> fields = new ArrayList<>();
-        try {
-            fields = schema.getFields();
-        } catch (AvroRuntimeException e) {
-            //doesn't have fields
-        }
+        StagedSchemaSync sync = asGradleException(() -> StagedSchemaSync.sync(staging.toPath(), getDest().toPath()));
+        getLogger().lifecycle("Avro schemas written: {}, unchanged: {}, deleted: {}",
+                sync.getWritten(), sync.getUnchanged(), sync.getDeleted());
+    }
 
-        fields.forEach(field -> {
-            getLogger().debug("Validating schema.field for '{}.{}'", schema.getName(), field.name());
-            if (field.aliases() != null && !field.aliases().isEmpty()) {
-                throw new AvroValidationException(spec -> {
-                    spec.message = "Aliases Found!";
-                    spec.description = "Aliases are not compatible across avro implementations, please do not use them.";
-                    spec.props.put("source", idlFile);
-                    spec.props.put("schema", schema);
-                    spec.props.put("field", field);
-                });
+    /**
+     * Each top level record must be in its own namespace, this spans all idl files so is checked once every worker
+     * has listed the types it parsed.
+     */
+    private void validateNamespaces(IdlCompileSpec spec) {
+        for (String[] type : readManifest(spec)) {
+            String namespace = type[0];
+            String name = type[1];
+            if (Boolean.parseBoolean(type[2])) {
+                continue;
             }
 
-            if (field.getObjectProp(SCHEMA_PROP_REQUIRED) == null &&
-                    field.defaultVal() == null &&
-                    !nullUnion(field)) {
-
-                throw new AvroValidationException(spec -> {
-                    spec.message = "Default Value Missing";
-                    spec.description = String.join(System.lineSeparator(),
-                            "Unless marked @required(true) (which should rarely be used) a field must have a default value.",
-                            "The header field is an exception to this rule in top level records.");
-                    spec.props.putAll(ImmutableMap.of(
-                            "source", idlFile,
-                            "schema", schema,
-                            "field", field));
+            if (namespaceMap.containsKey(namespace)) {
+                throw new AvroValidationException(validation -> {
+                    validation.message = "Top Level Records Share a Namespace!";
+                    validation.description = String.join(System.lineSeparator(),
+                            "Each top level record (not marked with @embedded(true)) must be in their own namespace.",
+                            "this is required in order to generate language bindings without causing name collisions.");
+                    validation.props.put("source", spec.sourceFile);
+                    validation.props.put("schema1", name);
+                    validation.props.put("schema2", namespaceMap.get(namespace));
                 });
             }
-        });
 
-        return true;
+            getLogger().debug("Adding namespace '{}'", namespace);
+            namespaceMap.put(namespace, name);
+        }
     }
 
-    private boolean nullUnion(Schema.Field field) {
-        return field.schema().getType() == Schema.Type.UNION &&
-                field.schema().getTypes().get(0).getType() == Schema.Type.NULL;
+    private static List<String[]> readManifest(IdlCompileSpec spec) {
+        return asGradleException(() -> Files.readAllLines(spec.manifestFile.toPath(), StandardCharsets.UTF_8))
+                .stream()
+                .map(line -> line.split(IdlCompileWorker.MANIFEST_SEPARATOR))
+                .collect(Collectors.toList());
     }
 
     private String processIncludes(File idlFile) {
@@ -175,19 +167,8 @@ public class AvroIdlToSchemata extends SourceTask {
 
             try (Stream<String> idlStream = Files.lines(idlFile.toPath())) {
                 idlStream.map(line -> {
-                    Matcher matcher = INCLUDE_PATTERN.matcher(line);
-                    if (matcher.matches()) {
-                        File include = new File(idlFile.getParentFile(), matcher.group(1));
-                        getLogger().debug("Processing include file '{}'", matcher.group(1));
-                        if (!include.getPath().endsWith("." + IDL_FRAGMENT_EXTENSION)) {
-                            throw new AvroValidationException(spec -> {
-                                spec.message = "Invalid Include Statement!";
-                                spec.description = format("@include does not specify an avdl fragment (*.%s).", IDL_FRAGMENT_EXTENSION);
-                                spec.props.put("source", idlFile);
-                                spec.props.put("include", line);
-                            });
-                        }
-
+                    File include = includedFragment(idlFile, line);
+                    if (include != null) {
                         if (includesCache.containsKey(include.getAbsolutePath())) {
                             getLogger().info("include cache hit '{}'", include.getAbsolutePath());
                             return includesCache.get(include.getAbsolutePath());
@@ -207,42 +188,116 @@ public class AvroIdlToSchemata extends SourceTask {
         });
     }
 
-    private IdlConversion toIdl(File idlFile) {
-        return new IdlConversion(idlFile, new Idl(new StringReader(processIncludes(idlFile))));
-    }
+    /**
+     * Leaves the includes out of the idl, collecting the fragments they name along with their text wrapped in the
+     * fragment protocol.
+     */
+    private String stripIncludes(File idlFile, Map<File, File> fragments) {
+        return asGradleException(() -> {
+            StringBuilder strBuilder = new StringBuilder(100);
+            try (Stream<String> idlStream = Files.lines(idlFile.toPath())) {
+                idlStream.map(line -> {
+                    File include = includedFragment(idlFile, line);
+                    if (include != null) {
+                        fragments.put(include, wrappedFragment(include));
+                        return System.lineSeparator();
+                    } else {
+                        return line + System.lineSeparator();
+                    }
+                }).forEach(strBuilder::append);
+            }
 
-    private class IdlConversion {
-        final File idlFile;
-        final Idl idl;
+            return strBuilder.toString();
+        });
+    }
 
-        public IdlConversion(File idlFile, Idl idl) {
-            this.idlFile = idlFile;
-            this.idl = idl;
+    /**
+     * @return the fragment named by an include statement, null if the line isn't one
+     */
+    private File includedFragment(File idlFile, String line) {
+        Matcher matcher = INCLUDE_PATTERN.matcher(line);
+        if (!matcher.matches()) {
+            return null;
         }
 
-        List<SchemaConversion> getSchemas() {
-            return asGradleException(() -> idl.CompilationUnit().getTypes())
-                    .stream()
-                    .map(schema -> new SchemaConversion(this, schema))
-                    .collect(Collectors.toList());
+        File include = new File(idlFile.getParentFile(), matcher.group(1));
+        getLogger().debug("Processing include file '{}'", matcher.group(1));
+        if (!include.getPath().endsWith("." + IDL_FRAGMENT_EXTENSION)) {
+            throw new AvroValidationException(spec -> {
+                spec.message = "Invalid Include Statement!";
+                spec.description = format("@include does not specify an avdl fragment (*.%s).", IDL_FRAGMENT_EXTENSION);
+                spec.props.put("source", idlFile);
+                spec.props.put("include", line);
+            });
         }
+
+        return include.getAbsoluteFile();
     }
 
-    private class SchemaConversion {
-        final IdlConversion idlConversion;
-        final Schema schema;
+    /**
+     * The fragment with its own includes resolved, wrapped in a protocol of the placeholder namespace so it can be
+     * parsed on its own. Written once per fragment however many files include it.
+     */
+    private File wrappedFragment(File fragment) {
+        File wrapped = wrappedFragments.get(fragment);
+        if (wrapped == null) {
+            wrapped = new File(idlDir, format("fragment%d.%s", wrappedFragments.size(), AVRO_IDL_EXTENSION));
+            String text = format("@namespace(\"%s\")%nprotocol %s {%n%s%n}%n",
+                    FRAGMENT_NAMESPACE, FRAGMENT_PROTOCOL, processIncludes(fragment));
+            File target = wrapped;
+            asGradleException(() -> Files.write(target.toPath(), text.getBytes(StandardCharsets.UTF_8)));
+            wrappedFragments.put(fragment, wrapped);
+        }
+
+        return wrapped;
+    }
 
-        public SchemaConversion(IdlConversion idlConversion, Schema schema) {
-            this.idlConversion = idlConversion;
-            this.schema = schema;
+    private IdlCompileSpec toIdl(File idlFile, File staging, int index) {
+        IdlCompileSpec spec = new IdlCompileSpec();
+        spec.sourceFile = idlFile;
+        spec.idlFile = new File(idlDir, format("%d.%s", index, AVRO_IDL_EXTENSION));
+        spec.manifestFile = new File(idlDir, format("%d.types", index));
+        spec.schemaDir = staging;
+        String resolved = processIncludes(idlFile);
+        asGradleException(() -> Files.write(spec.idlFile.toPath(), resolved.getBytes(StandardCharsets.UTF_8)));
+
+        if (sharedFragments) {
+            Map<File, File> fragments = new LinkedHashMap<>();
+            String shared = stripIncludes(idlFile, fragments);
+            if (!fragments.isEmpty()) {
+                spec.sharedIdlFile = new File(idlDir, format("%d-shared.%s", index, AVRO_IDL_EXTENSION));
+                spec.fragments = fragments;
+                spec.namespace = protocolNamespace(idlFile);
+                asGradleException(() -> Files.write(spec.sharedIdlFile.toPath(), shared.getBytes(StandardCharsets.UTF_8)));
+            }
         }
 
-        Boolean isEmbedded() {
-            return schema.getObjectProp(SCHEMA_PROP_EMBEDDED) != null;
+        submitIdl(spec);
+        return spec;
+    }
+
+    private void submitIdl(IdlCompileSpec spec) {
+        if (AvroPluginUtils.isInProcess(isolationMode)) {
+            //same Avro as the other tasks, hand them the schemas as built instead of having them parse the files
+            new IdlCompileWorker(spec).compile(ParsedSchemaCache.forProject(getProject())::put);
+            return;
         }
 
-        String fileName() {
-            return format("%s.%s", schema.getName(), AvroSchemaValidate.AVRO_SCHEMA_EXTENSION);
+        getWorkerExecutor().submit(IdlCompileWorker.class, config -> {
+            AvroPluginUtils.isolateAvroWorker(config, isolationMode, compilerClasspath);
+            config.params(spec);
+        });
+    }
+
+    private void awaitIdl() {
+        if (!AvroPluginUtils.isInProcess(isolationMode)) {
+            getWorkerExecutor().await();
         }
     }
+
+    private static String protocolNamespace(File idlFile) {
+        String idl = new String(asGradleException(() -> Files.readAllBytes(idlFile.toPath())), StandardCharsets.UTF_8);
+        Matcher matcher = PROTOCOL_NAMESPACE_PATTERN.matcher(idl);
+        return matcher.find() ? matcher.group(1) : null;
+    }
 }
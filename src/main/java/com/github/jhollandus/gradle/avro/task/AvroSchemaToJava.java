@@ -0,0 +1,149 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import com.github.jhollandus.gradle.avro.AvroPluginUtils;
+import com.github.jhollandus.gradle.avro.ParsedSchemaCache;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.SourceTask;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+
+public class AvroSchemaToJava extends SourceTask {
+    private File outputDir;
+    private String stringType;
+    private String fieldVisibility;
+    private boolean createSetters;
+    private String outputCharacterEncoding;
+    private String templateDirectory;
+    private String registryClass;
+    private FileCollection compilerClasspath;
+    private String isolationMode;
+
+    @Inject
+    public WorkerExecutor getWorkerExecutor() {
+        throw new UnsupportedOperationException();
+    }
+
+    @TaskAction
+    public void generate() {
+        getProject().delete(outputDir);
+        getProject().mkdir(outputDir);
+
+        SpecificCompileSpec spec = new SpecificCompileSpec();
+        spec.schemaFiles = new ArrayList<>(getSource().matching(filter ->
+                filter.include("**/*." + AvroSchemaValidate.AVRO_SCHEMA_EXTENSION)).getFiles());
+        spec.outputDir = outputDir;
+        spec.stringType = stringType;
+        spec.fieldVisibility = fieldVisibility;
+        spec.createSetters = createSetters;
+        spec.outputCharacterEncoding = outputCharacterEncoding;
+        spec.templateDirectory = templateDirectory;
+        spec.registryClass = registryClass;
+
+        if (AvroPluginUtils.isInProcess(isolationMode)) {
+            //same Avro as the other tasks, reuse the schemas they already parsed
+            new SpecificCompileWorker(spec).compile(ParsedSchemaCache.forProject(getProject())::parse);
+            return;
+        }
+
+        //a single worker for all schemas, embedded types are generated by every schema that includes them
+        getWorkerExecutor().submit(SpecificCompileWorker.class, config -> {
+            AvroPluginUtils.isolateAvroWorker(config, isolationMode, compilerClasspath);
+            config.params(spec);
+        });
+        getWorkerExecutor().await();
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @Input
+    public String getStringType() {
+        return stringType;
+    }
+
+    public void setStringType(String stringType) {
+        this.stringType = stringType;
+    }
+
+    @Input
+    public String getFieldVisibility() {
+        return fieldVisibility;
+    }
+
+    public void setFieldVisibility(String fieldVisibility) {
+        this.fieldVisibility = fieldVisibility;
+    }
+
+    @Input
+    public boolean isCreateSetters() {
+        return createSetters;
+    }
+
+    public void setCreateSetters(boolean createSetters) {
+        this.createSetters = createSetters;
+    }
+
+    @Input
+    public String getOutputCharacterEncoding() {
+        return outputCharacterEncoding;
+    }
+
+    public void setOutputCharacterEncoding(String outputCharacterEncoding) {
+        this.outputCharacterEncoding = outputCharacterEncoding;
+    }
+
+    @Input
+    @Optional
+    public String getTemplateDirectory() {
+        return templateDirectory;
+    }
+
+    public void setTemplateDirectory(String templateDirectory) {
+        this.templateDirectory = templateDirectory;
+    }
+
+    /**
+     * Fully qualified name of the generated fingerprint registry, no registry is generated when not set.
+     */
+    @Input
+    @Optional
+    public String getRegistryClass() {
+        return registryClass;
+    }
+
+    public void setRegistryClass(String registryClass) {
+        this.registryClass = registryClass;
+    }
+
+    @Classpath
+    public FileCollection getCompilerClasspath() {
+        return compilerClasspath;
+    }
+
+    public void setCompilerClasspath(FileCollection compilerClasspath) {
+        this.compilerClasspath = compilerClasspath;
+    }
+
+    @Input
+    public String getIsolationMode() {
+        return isolationMode;
+    }
+
+    public void setIsolationMode(String isolationMode) {
+        this.isolationMode = isolationMode;
+    }
+}
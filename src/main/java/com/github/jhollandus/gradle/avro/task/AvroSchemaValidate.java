@@ -1,10 +1,10 @@
 package com.github.jhollandus.gradle.avro.task;
 
-import avro.shaded.com.google.common.collect.Lists;
-import com.github.jhollandus.gradle.Exceptions;
 import com.github.jhollandus.gradle.avro.AvroPluginUtils;
 import com.github.jhollandus.gradle.avro.AvroValidationException;
+import com.github.jhollandus.gradle.avro.ParsedSchemaCache;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
 import org.apache.avro.SchemaValidationException;
 import org.apache.avro.SchemaValidator;
 import org.apache.avro.SchemaValidatorBuilder;
@@ -24,21 +24,27 @@ import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTree;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.SourceTask;
 import org.gradle.api.tasks.TaskAction;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import static com.github.jhollandus.gradle.Exceptions.asGradleException;
 
@@ -48,44 +54,106 @@ public class AvroSchemaValidate extends SourceTask {
 
     private String compatibility;
     private boolean compareAll;
+    private String baselineSource;
+    private FileCollection baselines;
+    private boolean sharedSchemas;
 
     public AvroSchemaValidate() {
         this.compatibility = Compatibility.BACKWARDS.name();
         this.compareAll = false;
+        this.baselineSource = BaselineSource.GIT.name();
     }
 
     @TaskAction
     public void validate() {
+        switch (BaselineSource.valueOf(baselineSource.toUpperCase())) {
+            case ARTIFACT:
+                validateAgainstBaselines();
+                break;
+            case GIT:
+            default:
+                validateAgainstGit();
+                break;
+        }
+    }
 
+    private void validateAgainstGit() {
         if (rootProj().file(".git").exists()) {
             Git git = asGradleException(() -> Git.open(rootProj().file(".")));
+            List<RevCommit> tags = asGradleException(() -> findTags(git));
             SchemaValidator schemaValidator = createValidator();
 
             getSource().matching(filter -> filter.include("**/*." + AVRO_SCHEMA_EXTENSION)).forEach(schemaFile -> {
-                List<Schema> schemas = asGradleException(() -> findHistoricalSchemas(git, schemaFile));
-                Schema localSchema = Exceptions.asGradleException(() -> new Schema.Parser().parse(schemaFile));
-
-                try {
-                    schemaValidator.validate(localSchema, Lists.reverse(schemas));
-                } catch (SchemaValidationException e) {
-                    throw new AvroValidationException(spec -> {
-                        spec.description = "Incompatible Schema Modification!";
-                        spec.message = e.getMessage();
-                        spec.props.put("schema", localSchema);
-                        spec.props.put("source", schemaFile);
-                    });
-                }
+                SchemaHistory history = new SchemaHistory(schemaValidator, schemaFile);
+                asGradleException(() -> streamHistoricalSchemas(git, tags, schemaFile, history));
             });
         } else {
             throw new GradleException("Not a valid git repository, cannot validate schema compatibility.");
         }
     }
 
-    private List<Schema> findHistoricalSchemas(Git git, File localSchemaFile) throws Exception {
+    private void validateAgainstBaselines() {
+        FileCollection baselines = getBaselines();
+        if (baselines.isEmpty()) {
+            throw new GradleException("No baseline artifacts configured, cannot validate schema compatibility.");
+        }
+
+        //baselines are ordered oldest to newest, history is streamed latest first
+        List<Map<String, File>> baselineIndexes = new LinkedList<>();
+        for (File baseline : baselines) {
+            getLogger().info("Using schema baseline '{}'", baseline);
+            baselineIndexes.add(0, indexBaseline(baseline));
+        }
+
+        SchemaValidator schemaValidator = createValidator();
+        getSource().matching(filter -> filter.include("**/*." + AVRO_SCHEMA_EXTENSION)).visit(details -> {
+            if (details.isDirectory()) {
+                return;
+            }
+
+            String relativePath = details.getRelativePath().getPathString();
+            SchemaHistory history = new SchemaHistory(schemaValidator, details.getFile());
+            for (Map<String, File> index : baselineIndexes) {
+                File baselineFile = index.get(relativePath);
+                //always use new parser to erase any previous history, schemas are fully contextual
+                if (baselineFile != null &&
+                        !history.accept(asGradleException(() -> new Schema.Parser().parse(baselineFile)))) {
+                    return;
+                }
+            }
+        });
+    }
+
+    private Map<String, File> indexBaseline(File baseline) {
+        FileTree tree;
+        if (baseline.isDirectory()) {
+            tree = getProject().fileTree(baseline);
+        } else if (baseline.isFile()) {
+            tree = getProject().zipTree(baseline);
+        } else {
+            throw new GradleException(String.format("Schema baseline '%s' does not exist.", baseline));
+        }
+
+        Map<String, File> index = new LinkedHashMap<>();
+        tree.matching(filter -> filter.include("**/*." + AVRO_SCHEMA_EXTENSION)).visit(details -> {
+            if (!details.isDirectory()) {
+                index.put(details.getRelativePath().getPathString(), details.getFile());
+            }
+        });
+
+        return index;
+    }
+
+    /**
+     * Walks the tagged versions of a schema latest first, handing each distinct blob to the history as it is read.
+     * Blobs already seen at an earlier tag are skipped without being parsed.
+     */
+    private void streamHistoricalSchemas(Git git, List<RevCommit> tags, File localSchemaFile, SchemaHistory history)
+            throws Exception {
 
         String schemaGitPath = AvroPluginUtils.relativePath(rootProj().getRootDir(), localSchemaFile);
-        List<Schema> schemas = new LinkedList<>();
-        for (RevCommit commit : findTags(git)) {
+        Set<ObjectId> seenBlobs = new HashSet<>();
+        for (RevCommit commit : tags) {
             getLogger().debug(commit.getShortMessage());
             RevTree tree = commit.getTree();
 
@@ -96,16 +164,25 @@ public class AvroSchemaValidate extends SourceTask {
 
             while (walker.next()) {
                 if (!walker.getFileMode(0).equals(FileMode.TYPE_TREE)) {
-                    ObjectLoader loader = git.getRepository().open(walker.getObjectId(0));
+                    ObjectId blobId = walker.getObjectId(0);
+                    if (!seenBlobs.add(blobId)) {
+                        getLogger().debug("Schema blob '{}' already validated, skipping", blobId.name());
+                        continue;
+                    }
+
+                    Schema schema;
+                    ObjectLoader loader = git.getRepository().open(blobId);
                     try (ObjectStream os = loader.openStream()) {
                         //always use new parser to erase any previous history, schemas are fully contextual
-                        schemas.add(new Schema.Parser().parse(os));
+                        schema = new Schema.Parser().parse(os);
+                    }
+
+                    if (!history.accept(schema)) {
+                        return;
                     }
                 }
             }
         }
-
-        return schemas;
     }
 
     private List<RevCommit> findTags(Git git) throws Exception {
@@ -116,7 +193,7 @@ public class AvroSchemaValidate extends SourceTask {
                 .map(rev ->
                     asGradleException(() ->
                         git.log().add(rev).call().iterator().next()))
-                .sorted(Comparator.comparingInt(RevCommit::getCommitTime))
+                .sorted(Comparator.comparingInt(RevCommit::getCommitTime).reversed())
                 .collect(Collectors.toList());
     }
 
@@ -133,6 +210,10 @@ public class AvroSchemaValidate extends SourceTask {
         return getProject().getRootProject();
     }
 
+    /**
+     * Creates a validator that checks against a single historical schema, {@link SchemaHistory} decides how many
+     * versions are offered to it.
+     */
     private SchemaValidator createValidator() {
         SchemaValidatorBuilder builder = new SchemaValidatorBuilder();
 
@@ -149,10 +230,50 @@ public class AvroSchemaValidate extends SourceTask {
                 break;
         }
 
-        if (compareAll) {
-            return builder.validateAll();
-        } else {
-            return builder.validateLatest();
+        return builder.validateLatest();
+    }
+
+    /**
+     * Validates a local schema against historical versions as they are read, latest first. Only the fingerprints of
+     * versions already validated are retained so memory depends on the number of distinct versions.
+     */
+    private class SchemaHistory {
+        final SchemaValidator validator;
+        final File schemaFile;
+        final Schema localSchema;
+        final Set<Long> fingerprints = new HashSet<>();
+
+        SchemaHistory(SchemaValidator validator, File schemaFile) {
+            this.validator = validator;
+            this.schemaFile = schemaFile;
+            //always use new parser to erase any previous history, schemas are fully contextual
+            this.localSchema = sharedSchemas ?
+                    ParsedSchemaCache.forProject(getProject()).parse(schemaFile) :
+                    asGradleException(() -> new Schema.Parser().parse(schemaFile));
+        }
+
+        /**
+         * @return true if further (older) versions should be offered
+         */
+        boolean accept(Schema historical) {
+            //fingerprint the full json rather than the parsing canonical form, defaults matter for compatibility
+            long fingerprint = SchemaNormalization.fingerprint64(historical.toString().getBytes(StandardCharsets.UTF_8));
+            if (fingerprints.add(fingerprint)) {
+                try {
+                    validator.validate(localSchema, Collections.singletonList(historical));
+                } catch (SchemaValidationException e) {
+                    throw new AvroValidationException(spec -> {
+                        spec.description = "Incompatible Schema Modification!";
+                        spec.message = e.getMessage();
+                        spec.props.put("schema", localSchema);
+                        spec.props.put("source", schemaFile);
+                    });
+                }
+            } else {
+                getLogger().debug("Schema version of '{}' already validated, skipping", schemaFile);
+            }
+
+            return compareAll;
         }
     }
 
@@ -174,5 +295,46 @@ public class AvroSchemaValidate extends SourceTask {
         this.compareAll = compareAll;
     }
 
+    @Input
+    public String getBaselineSource() {
+        return baselineSource;
+    }
+
+    public void setBaselineSource(String baselineSource) {
+        this.baselineSource = baselineSource;
+    }
+
+    @InputFiles
+    @Optional
+    public FileCollection getBaselines() {
+        //only resolve baselines when they are actually used
+        if (baselines == null || BaselineSource.valueOf(baselineSource.toUpperCase()) != BaselineSource.ARTIFACT) {
+            return getProject().files();
+        }
+        return baselines;
+    }
+
+    /**
+     * Baseline schema artifacts, either zips produced by zipAvroSchema or directories, ordered oldest to newest.
+     */
+    public void setBaselines(FileCollection baselines) {
+        this.baselines = baselines;
+    }
+
+    /**
+     * Reuse the schemas parsed by the other avro tasks of the build, only worth it when their compiler runs in the build
+     * process since the content of every schema file is hashed.
+     */
+    @Internal
+    public boolean isSharedSchemas() {
+        return sharedSchemas;
+    }
+
+    public void setSharedSchemas(boolean sharedSchemas) {
+        this.sharedSchemas = sharedSchemas;
+    }
+
     public enum Compatibility {FULL, BACKWARDS, FORWARDS}
+
+    public enum BaselineSource {GIT, ARTIFACT}
 }
@@ -0,0 +1,153 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.gradle.api.GradleException;
+
+import javax.lang.model.SourceVersion;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.String.format;
+
+/**
+ * Writes the java source of a registry holding the canonical 64-bit fingerprint of every top level record, along
+ * with its class, reader and writer. Fingerprints are kept in a sorted array so a lookup is a binary search with no
+ * hashing, reflection or allocation. Class lookups go through a {@link ClassValue} that remembers the index of each
+ * class once it has been looked up.
+ * <p>
+ * Embedded types are skipped through {@link Schema#getObjectProp(String)}, which is why the plugin requires Avro 1.8
+ * or later.
+ */
+class BindingRegistryGenerator {
+    private final String registryClass;
+    private final Map<Long, Schema> records = new TreeMap<>();
+    private final Map<String, Schema> constants = new HashMap<>();
+
+    BindingRegistryGenerator(String registryClass) {
+        if (!SourceVersion.isName(registryClass)) {
+            throw new GradleException(format("The registry class '%s' is not a valid java class name.", registryClass));
+        }
+        this.registryClass = registryClass;
+    }
+
+    void add(Schema schema) {
+        if (schema.getType() != Schema.Type.RECORD || schema.getObjectProp(AvroIdlToSchemata.SCHEMA_PROP_EMBEDDED) != null) {
+            return;
+        }
+
+        //classes of the default package can't be imported or referenced from any other package
+        if (registryClass.contains(".") && (schema.getNamespace() == null || schema.getNamespace().isEmpty())) {
+            throw new GradleException(format("Record '%s' has no namespace, its class can't be referenced from the registry '%s'. Give the record a namespace.",
+                    schema.getFullName(), registryClass));
+        }
+
+        long fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+        Schema sameFingerprint = records.putIfAbsent(fingerprint, schema);
+        if (sameFingerprint != null) {
+            throw new GradleException(format("Records '%s' and '%s' share the fingerprint 0x%016x, the registry '%s' cannot tell them apart.",
+                    sameFingerprint.getFullName(), schema.getFullName(), fingerprint, registryClass));
+        }
+
+        String constant = constantName(schema);
+        Schema sameConstant = constants.putIfAbsent(constant, schema);
+        if (sameConstant != null) {
+            throw new GradleException(format("Records '%s' and '%s' both map to the constant %s of the registry '%s', rename one of them.",
+                    sameConstant.getFullName(), schema.getFullName(), constant, registryClass));
+        }
+    }
+
+    void write(File outputDir, String encoding) throws Exception {
+        int split = registryClass.lastIndexOf('.');
+        String packageName = split > 0 ? registryClass.substring(0, split) : null;
+        String className = registryClass.substring(split + 1);
+
+        StringBuilder src = new StringBuilder();
+        if (packageName != null) {
+            src.append(format("package %s;%n%n", packageName));
+        }
+
+        src.append(format("import org.apache.avro.io.DatumReader;%n"));
+        src.append(format("import org.apache.avro.io.DatumWriter;%n"));
+        src.append(format("import org.apache.avro.specific.SpecificDatumReader;%n"));
+        src.append(format("import org.apache.avro.specific.SpecificDatumWriter;%n"));
+        src.append(format("import java.util.Arrays;%n%n"));
+        src.append(format("/**%n * Fingerprints and codecs of the top level records in this module, generated do not edit.%n */%n"));
+        src.append(format("@SuppressWarnings(\"unchecked\")%n"));
+        src.append(format("public final class %s {%n", className));
+
+        for (Map.Entry<Long, Schema> record : records.entrySet()) {
+            src.append(format("    public static final long %s = 0x%016xL;%n", constantName(record.getValue()), record.getKey()));
+        }
+
+        src.append(format("%n    private static final long[] FINGERPRINTS = {%n"));
+        for (Schema schema : records.values()) {
+            src.append(format("            %s,%n", constantName(schema)));
+        }
+        src.append(format("    };%n"));
+
+        src.append(format("%n    private static final Class<?>[] CLASSES = {%n"));
+        for (Schema schema : records.values()) {
+            src.append(format("            %s.class,%n", schema.getFullName()));
+        }
+        src.append(format("    };%n"));
+
+        src.append(format("%n    private static final DatumReader<?>[] READERS = new DatumReader<?>[CLASSES.length];%n"));
+        src.append(format("    private static final DatumWriter<?>[] WRITERS = new DatumWriter<?>[CLASSES.length];%n%n"));
+        src.append(format("    private static final ClassValue<Integer> INDEXES = new ClassValue<Integer>() {%n"));
+        src.append(format("        @Override%n"));
+        src.append(format("        protected Integer computeValue(Class<?> type) {%n"));
+        src.append(format("            for (int i = 0; i < CLASSES.length; i++) {%n"));
+        src.append(format("                if (CLASSES[i] == type) {%n"));
+        src.append(format("                    return i;%n"));
+        src.append(format("                }%n"));
+        src.append(format("            }%n"));
+        src.append(format("            return -1;%n"));
+        src.append(format("        }%n"));
+        src.append(format("    };%n%n"));
+        src.append(format("    static {%n"));
+        src.append(format("        for (int i = 0; i < CLASSES.length; i++) {%n"));
+        src.append(format("            READERS[i] = new SpecificDatumReader<>(CLASSES[i]);%n"));
+        src.append(format("            WRITERS[i] = new SpecificDatumWriter<>(CLASSES[i]);%n"));
+        src.append(format("        }%n"));
+        src.append(format("    }%n%n"));
+        src.append(format("    private %s() {%n    }%n%n", className));
+
+        src.append(format("    /** @return the registry index of the fingerprint, negative when unknown */%n"));
+        src.append(format("    public static int indexOf(long fingerprint) {%n"));
+        src.append(format("        return Arrays.binarySearch(FINGERPRINTS, fingerprint);%n"));
+        src.append(format("    }%n%n"));
+
+        src.append(format("    /** @return the registry index of the record class, negative when unknown */%n"));
+        src.append(format("    public static int indexOf(Class<?> type) {%n"));
+        src.append(format("        return INDEXES.get(type);%n"));
+        src.append(format("    }%n%n"));
+
+        src.append(format("    public static int size() {%n        return FINGERPRINTS.length;%n    }%n%n"));
+        src.append(format("    public static long fingerprintAt(int index) {%n        return FINGERPRINTS[index];%n    }%n%n"));
+        src.append(format("    public static Class<?> classAt(int index) {%n        return CLASSES[index];%n    }%n%n"));
+        src.append(format("    public static <T> DatumReader<T> readerAt(int index) {%n        return (DatumReader<T>) READERS[index];%n    }%n%n"));
+        src.append(format("    public static <T> DatumWriter<T> writerAt(int index) {%n        return (DatumWriter<T>) WRITERS[index];%n    }%n"));
+        src.append(format("}%n"));
+
+        File target = new File(outputDir, registryClass.replace('.', File.separatorChar) + ".java");
+        Files.createDirectories(target.getParentFile().toPath());
+        Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        Files.write(target.toPath(), src.toString().getBytes(charset));
+    }
+
+    /**
+     * com.example.UserCreated becomes COM_EXAMPLE_USER_CREATED_FINGERPRINT.
+     */
+    static String constantName(Schema schema) {
+        return schema.getFullName()
+                .replaceAll("([a-z0-9])([A-Z])", "$1_$2")
+                .replace('.', '_')
+                .toUpperCase() + "_FINGERPRINT";
+    }
+}
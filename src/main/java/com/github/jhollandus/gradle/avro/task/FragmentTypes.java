@@ -0,0 +1,222 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Schema;
+import org.apache.avro.compiler.idl.Idl;
+import org.gradle.api.GradleException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The types of already parsed fragments, handed to the idl parser of an including file in place of the fragment text.
+ * Fragments are parsed within a placeholder namespace, types that picked it up are copied into the namespace of the
+ * including file so they end up where a textual include would have put them.
+ * <p>
+ * Avro has no api for either, the parser's type map is the one protocol imports fill and fields are copied with
+ * whichever constructor the Avro version in use offers. Copying a field through its converted default value costs
+ * as much as parsing it again.
+ */
+final class FragmentTypes {
+    private static final Field IDL_NAMES = idlNames();
+    private static final FieldCopy FIELD_COPY = fieldCopy();
+    private static final MethodHandle ENUM_DEFAULT = enumDefault();
+    private static final MethodHandle CREATE_ENUM = createEnum();
+
+    private final String placeholder;
+    private final String namespace;
+    private final Map<String, Schema> copies = new LinkedHashMap<>();
+
+    /**
+     * @param namespace namespace of the including file, may be null
+     */
+    FragmentTypes(String placeholder, String namespace) {
+        this.placeholder = placeholder;
+        this.namespace = namespace;
+    }
+
+    /**
+     * @return false if the Avro version in use can't be handed parsed types
+     */
+    static boolean isSupported() {
+        return IDL_NAMES != null && FIELD_COPY != null;
+    }
+
+    void add(Protocol fragment) {
+        boolean placed = fragment.getTypes().stream().anyMatch(type -> placeholder.equals(type.getNamespace()));
+        for (Schema type : fragment.getTypes()) {
+            if (placed) {
+                copy(type);
+            } else {
+                //nothing to move, the parsed types are shared as they are
+                copies.putIfAbsent(type.getFullName(), type);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void seed(Idl idl) {
+        Map<String, Schema> names;
+        try {
+            names = (Map<String, Schema>) IDL_NAMES.get(idl);
+        } catch (IllegalAccessException e) {
+            throw new GradleException("Unable to hand fragment types to the idl parser", e);
+        }
+
+        copies.values().forEach(type -> names.put(type.getFullName(), type));
+    }
+
+    private Schema copy(Schema schema) {
+        Schema copy;
+        switch (schema.getType()) {
+            case RECORD:
+            case ENUM:
+            case FIXED:
+                Schema done = copies.get(schema.getFullName());
+                if (done != null) {
+                    return done;
+                }
+
+                copy = copyNamed(schema);
+                for (String alias : schema.getAliases()) {
+                    copy.addAlias(alias.startsWith(placeholder + ".") ? alias.substring(placeholder.length() + 1) : alias,
+                            alias.startsWith(placeholder + ".") ? namespace : null);
+                }
+                break;
+            case ARRAY:
+                copy = Schema.createArray(copy(schema.getElementType()));
+                break;
+            case MAP:
+                copy = Schema.createMap(copy(schema.getValueType()));
+                break;
+            case UNION:
+                List<Schema> types = new ArrayList<>();
+                schema.getTypes().forEach(type -> types.add(copy(type)));
+                copy = Schema.createUnion(types);
+                break;
+            default:
+                return schema;
+        }
+
+        schema.getObjectProps().forEach(copy::addProp);
+        if (schema.getLogicalType() != null) {
+            schema.getLogicalType().addToSchema(copy);
+        }
+        return copy;
+    }
+
+    private Schema copyNamed(Schema schema) {
+        String copyNamespace = placeholder.equals(schema.getNamespace()) ? namespace : schema.getNamespace();
+        Schema copy;
+        switch (schema.getType()) {
+            case RECORD:
+                copy = Schema.createRecord(schema.getName(), schema.getDoc(), copyNamespace, schema.isError());
+                //registered before the fields so recursive references resolve to the copy
+                copies.put(schema.getFullName(), copy);
+                List<Schema.Field> fields = new ArrayList<>();
+                for (Schema.Field field : schema.getFields()) {
+                    fields.add(copyField(field, copy(field.schema())));
+                }
+                copy.setFields(fields);
+                return copy;
+            case ENUM:
+                copy = copyEnum(schema, copyNamespace);
+                break;
+            default:
+                copy = Schema.createFixed(schema.getName(), schema.getDoc(), copyNamespace, schema.getFixedSize());
+                break;
+        }
+
+        copies.put(schema.getFullName(), copy);
+        return copy;
+    }
+
+    private static Schema.Field copyField(Schema.Field field, Schema schema) {
+        try {
+            return FIELD_COPY.copy(field, schema);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new GradleException(String.format("Unable to copy field '%s'", field.name()), e);
+        }
+    }
+
+    private static Schema copyEnum(Schema schema, String copyNamespace) {
+        try {
+            String enumDefault = ENUM_DEFAULT != null ? (String) ENUM_DEFAULT.invoke(schema) : null;
+            return enumDefault != null ?
+                    (Schema) CREATE_ENUM.invoke(schema.getName(), schema.getDoc(), copyNamespace, schema.getEnumSymbols(), enumDefault) :
+                    Schema.createEnum(schema.getName(), schema.getDoc(), copyNamespace, schema.getEnumSymbols());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new GradleException(String.format("Unable to copy enum '%s'", schema.getFullName()), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldCopy {
+        Schema.Field copy(Schema.Field field, Schema schema) throws Throwable;
+    }
+
+    private static Field idlNames() {
+        try {
+            Field names = Idl.class.getDeclaredField("names");
+            names.setAccessible(true);
+            return names;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static FieldCopy fieldCopy() {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            //Avro 1.9 and later copy a field as it is
+            MethodHandle copy = lookup.findConstructor(Schema.Field.class,
+                    MethodType.methodType(void.class, Schema.Field.class, Schema.class));
+            return (field, schema) -> (Schema.Field) copy.invoke(field, schema);
+        } catch (ReflectiveOperationException e) {
+            //Avro 1.8 takes the default as the json node it keeps
+        }
+
+        try {
+            MethodHandle defaultValue = lookup.findVirtual(Schema.Field.class, "defaultValue",
+                    MethodType.methodType(Schema.Field.class.getMethod("defaultValue").getReturnType()));
+            MethodHandle create = lookup.findConstructor(Schema.Field.class, MethodType.methodType(void.class,
+                    String.class, Schema.class, String.class, defaultValue.type().returnType(), Schema.Field.Order.class));
+            return (field, schema) -> {
+                Schema.Field copy = (Schema.Field) create.invoke(field.name(), schema, field.doc(), defaultValue.invoke(field), field.order());
+                field.getObjectProps().forEach(copy::addProp);
+                field.aliases().forEach(copy::addAlias);
+                return copy;
+            };
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle enumDefault() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Schema.class, "getEnumDefault", MethodType.methodType(String.class));
+        } catch (ReflectiveOperationException e) {
+            //enum defaults arrived with Avro 1.9
+            return null;
+        }
+    }
+
+    private static MethodHandle createEnum() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Schema.class, "createEnum", MethodType.methodType(Schema.class,
+                    String.class, String.class, String.class, List.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
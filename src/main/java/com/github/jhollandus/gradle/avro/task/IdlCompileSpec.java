@@ -0,0 +1,27 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Settings handed to {@link IdlCompileWorker}.
+ */
+public class IdlCompileSpec implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** the original idl file, used in messages */
+    public File sourceFile;
+    /** the idl with includes resolved */
+    public File idlFile;
+    /** the idl without its includes, parsed with the types of the included fragments instead when set */
+    public File sharedIdlFile;
+    /** the fragments left out of the shared idl, each mapped to its text wrapped in the fragment protocol */
+    public Map<File, File> fragments;
+    /** namespace of the idl protocol, the one fragment types without namespace end up in */
+    public String namespace;
+    /** where to write the checked top level schemas, optional */
+    public File schemaDir;
+    /** where to list every parsed type as 'namespace, name, embedded' lines */
+    public File manifestFile;
+}
@@ -0,0 +1,215 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import com.github.jhollandus.gradle.avro.AvroValidationException;
+import com.github.jhollandus.gradle.avro.ParsedSchemaCache;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Protocol;
+import org.apache.avro.Schema;
+import org.apache.avro.compiler.idl.Idl;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+import static com.github.jhollandus.gradle.Exceptions.asGradleException;
+import static com.github.jhollandus.gradle.avro.task.AvroIdlToSchemata.SCHEMA_FIELD_HEADER;
+import static com.github.jhollandus.gradle.avro.task.AvroIdlToSchemata.SCHEMA_HEADER_NAME;
+import static com.github.jhollandus.gradle.avro.task.AvroIdlToSchemata.SCHEMA_PROP_EMBEDDED;
+import static com.github.jhollandus.gradle.avro.task.AvroIdlToSchemata.SCHEMA_PROP_REQUIRED;
+import static java.lang.String.format;
+
+/**
+ * Parses a resolved idl file, checks its schemas and writes the top level ones as schema files. Runs isolated through
+ * the worker API so parsing, checks and the written json all follow the Avro version configured for the module.
+ * <p>
+ * With shared fragments each fragment is parsed once per worker process and the idl is parsed without their text,
+ * handed the fragment types instead. Whenever that fails the idl is parsed with the fragment text included.
+ */
+public class IdlCompileWorker implements Runnable {
+    static final String MANIFEST_SEPARATOR = "\t";
+    private static final Logger logger = Logging.getLogger(IdlCompileWorker.class);
+
+    //worker processes outlive builds, only the most recently used fragments are kept
+    private static final int FRAGMENT_CACHE_SIZE = 128;
+    private static final Map<String, Optional<Protocol>> FRAGMENTS = Collections.synchronizedMap(
+            new LinkedHashMap<String, Optional<Protocol>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Optional<Protocol>> eldest) {
+                    return size() > FRAGMENT_CACHE_SIZE;
+                }
+            });
+
+    private final IdlCompileSpec spec;
+
+    @Inject
+    public IdlCompileWorker(IdlCompileSpec spec) {
+        this.spec = spec;
+    }
+
+    @Override
+    public void run() {
+        //binding workers running later in this process pick the schemas up instead of parsing the written files
+        compile(ParsedSchemaCache.forWorker()::put);
+    }
+
+    /**
+     * @param written receives every schema file written along with its exact content
+     */
+    void compile(BiConsumer<byte[], Schema> written) {
+        Protocol protocol = spec.sharedIdlFile != null ? parseSharingFragments() : null;
+        if (protocol == null) {
+            try (Idl idl = new Idl(spec.idlFile)) {
+                protocol = idl.CompilationUnit();
+            } catch (Exception e) {
+                throw new GradleException(format("Failed to parse idl file '%s': %s", spec.sourceFile, e.getMessage()), e);
+            }
+        }
+
+        Protocol parsed = protocol;
+        asGradleException(() -> {
+            List<String> manifest = new ArrayList<>();
+            for (Schema schema : parsed.getTypes()) {
+                manifest.add(String.join(MANIFEST_SEPARATOR,
+                        String.valueOf(schema.getNamespace()), schema.getName(), String.valueOf(isEmbedded(schema))));
+
+                if (spec.schemaDir != null) {
+                    validateFields(schema);
+
+                    if (!isEmbedded(schema)) {
+                        validateHeader(schema);
+
+                        byte[] content = (schema.toString(true) + System.lineSeparator()).getBytes(Charset.defaultCharset());
+                        Files.write(new File(spec.schemaDir, format("%s.%s", schema.getName(), AvroIdlToSchemata.AVRO_SCHEMA_EXTENSION)).toPath(), content);
+                        written.accept(content, schema);
+                    }
+                }
+            }
+
+            if (spec.manifestFile != null) {
+                Files.write(spec.manifestFile.toPath(), manifest, StandardCharsets.UTF_8);
+            }
+        });
+    }
+
+    /**
+     * @return the protocol parsed with the types of the fragments, null if the text has to be parsed instead
+     */
+    private Protocol parseSharingFragments() {
+        if (!FragmentTypes.isSupported()) {
+            logger.info("Avro {} can't be handed parsed fragment types, '{}' is parsed with the fragment text",
+                    Schema.class.getPackage().getImplementationVersion(), spec.sourceFile);
+            return null;
+        }
+
+        FragmentTypes types = new FragmentTypes(AvroIdlToSchemata.FRAGMENT_NAMESPACE, spec.namespace);
+        for (Map.Entry<File, File> fragment : spec.fragments.entrySet()) {
+            Optional<Protocol> parsed = parsedFragment(fragment.getKey(), fragment.getValue());
+            if (!parsed.isPresent()) {
+                return null;
+            }
+            types.add(parsed.get());
+        }
+
+        try (Idl idl = new Idl(spec.sharedIdlFile)) {
+            types.seed(idl);
+            return idl.CompilationUnit();
+        } catch (Exception e) {
+            //the text parse reports any actual error in the idl
+            logger.info("Unable to parse '{}' with the fragment types, parsing it with the fragment text: {}",
+                    spec.sourceFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the fragment parsed on its own, empty if it can't be, e.g. because it uses types of the including file
+     */
+    private static Optional<Protocol> parsedFragment(File fragment, File wrapped) {
+        byte[] content = asGradleException(() -> Files.readAllBytes(wrapped.toPath()));
+        String hash = ParsedSchemaCache.contentHash(content);
+        Optional<Protocol> parsed = FRAGMENTS.get(hash);
+        if (parsed == null) {
+            try (Idl idl = new Idl(wrapped)) {
+                parsed = Optional.of(idl.CompilationUnit());
+            } catch (Exception e) {
+                logger.warn("Fragment '{}' can't be parsed on its own, files including it are parsed with its text: {}",
+                        fragment, e.getMessage());
+                parsed = Optional.empty();
+            }
+            FRAGMENTS.put(hash, parsed);
+        }
+
+        return parsed;
+    }
+
+    private static boolean isEmbedded(Schema schema) {
+        return schema.getObjectProp(SCHEMA_PROP_EMBEDDED) != null;
+    }
+
+    private void validateHeader(Schema schema) {
+        Schema.Field header = schema.getField(SCHEMA_FIELD_HEADER);
+        if (header == null || !header.schema().getName().equals(SCHEMA_HEADER_NAME)) {
+            throw new AvroValidationException(spec -> {
+                spec.message = "Header Missing in Record!";
+                spec.description = String.join(System.lineSeparator(),
+                        "All top level records must contain a 'header' field of type CommsHeader.",
+                        "If the record is to be used as an include only then mark it with @embedded(true).");
+                spec.props.put("source", this.spec.sourceFile);
+                spec.props.put("schema", schema);
+            });
+        }
+    }
+
+    private void validateFields(Schema schema) {
+        List<Schema.Field> fields = new ArrayList<>();
+        try {
+            fields = schema.getFields();
+        } catch (AvroRuntimeException e) {
+            //doesn't have fields
+        }
+
+        fields.forEach(field -> {
+            if (field.aliases() != null && !field.aliases().isEmpty()) {
+                throw new AvroValidationException(spec -> {
+                    spec.message = "Aliases Found!";
+                    spec.description = "Aliases are not compatible across avro implementations, please do not use them.";
+                    spec.props.put("source", this.spec.sourceFile);
+                    spec.props.put("schema", schema);
+                    spec.props.put("field", field);
+                });
+            }
+
+            if (field.getObjectProp(SCHEMA_PROP_REQUIRED) == null &&
+                    field.defaultVal() == null &&
+                    !nullUnion(field)) {
+
+                throw new AvroValidationException(spec -> {
+                    spec.message = "Default Value Missing";
+                    spec.description = String.join(System.lineSeparator(),
+                            "Unless marked @required(true) (which should rarely be used) a field must have a default value.",
+                            "The header field is an exception to this rule in top level records.");
+                    spec.props.put("source", this.spec.sourceFile);
+                    spec.props.put("schema", schema);
+                    spec.props.put("field", field);
+                });
+            }
+        });
+    }
+
+    private static boolean nullUnion(Schema.Field field) {
+        return field.schema().getType() == Schema.Type.UNION &&
+                field.schema().getTypes().get(0).getType() == Schema.Type.NULL;
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Settings handed to {@link SpecificCompileWorker}. Avro types are passed by name since the worker may load a
+ * different Avro version than the plugin.
+ */
+public class SpecificCompileSpec implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public List<File> schemaFiles;
+    public File outputDir;
+    public String stringType;
+    public String fieldVisibility;
+    public boolean createSetters;
+    public String outputCharacterEncoding;
+    public String templateDirectory;
+    public String registryClass;
+}
@@ -0,0 +1,62 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import com.github.jhollandus.gradle.avro.ParsedSchemaCache;
+import org.apache.avro.Schema;
+import org.apache.avro.compiler.specific.SpecificCompiler;
+import org.apache.avro.generic.GenericData;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.function.Function;
+
+import static com.github.jhollandus.gradle.Exceptions.asGradleException;
+
+/**
+ * Generates java bindings for a set of schema files. Runs isolated through the worker API against the Avro version
+ * configured for the module.
+ */
+public class SpecificCompileWorker implements Runnable {
+    private final SpecificCompileSpec spec;
+
+    @Inject
+    public SpecificCompileWorker(SpecificCompileSpec spec) {
+        this.spec = spec;
+    }
+
+    @Override
+    public void run() {
+        compile(ParsedSchemaCache.forWorker()::parse);
+    }
+
+    /**
+     * @param parser supplies the schema of each schema file, lets in process compilation reuse already parsed schemas
+     */
+    void compile(Function<File, Schema> parser) {
+        BindingRegistryGenerator registry = spec.registryClass != null ? new BindingRegistryGenerator(spec.registryClass) : null;
+
+        for (File schemaFile : spec.schemaFiles) {
+            asGradleException(() -> {
+                Schema schema = parser.apply(schemaFile);
+                if (registry != null) {
+                    registry.add(schema);
+                }
+
+                SpecificCompiler compiler = new SpecificCompiler(schema);
+                compiler.setStringType(GenericData.StringType.valueOf(spec.stringType));
+                compiler.setFieldVisibility(SpecificCompiler.FieldVisibility.valueOf(spec.fieldVisibility));
+                compiler.setCreateSetters(spec.createSetters);
+                compiler.setOutputCharacterEncoding(spec.outputCharacterEncoding);
+
+                if (spec.templateDirectory != null) {
+                    compiler.setTemplateDir(spec.templateDirectory);
+                }
+
+                compiler.compileToDestination(schemaFile, spec.outputDir);
+            });
+        }
+
+        if (registry != null) {
+            asGradleException(() -> registry.write(spec.outputDir, spec.outputCharacterEncoding));
+        }
+    }
+}
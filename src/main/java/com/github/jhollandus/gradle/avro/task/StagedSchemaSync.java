@@ -0,0 +1,89 @@
+package com.github.jhollandus.gradle.avro.task;
+
+import com.github.jhollandus.gradle.avro.ParsedSchemaCache;
+
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Moves staged schema files into the destination, leaving files with identical content untouched so their timestamps
+ * don't change, and deletes destination schemas that were not staged.
+ */
+class StagedSchemaSync {
+    private int written;
+    private int unchanged;
+    private int deleted;
+
+    private StagedSchemaSync() {
+    }
+
+    static StagedSchemaSync sync(Path staging, Path dest) throws Exception {
+        StagedSchemaSync sync = new StagedSchemaSync();
+        Files.createDirectories(dest);
+        Map<Path, Path> existing;
+        try (Stream<Path> destStream = Files.walk(dest)) {
+            existing = destStream
+                    .filter(p -> Files.isRegularFile(p) && p.toString().endsWith("." + AvroIdlToSchemata.AVRO_SCHEMA_EXTENSION))
+                    .collect(Collectors.toMap(dest::relativize, p -> p));
+        }
+
+        List<Path> staged;
+        try (Stream<Path> stagingStream = Files.walk(staging)) {
+            staged = stagingStream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        for (Path stagedFile : staged) {
+            Path relative = staging.relativize(stagedFile);
+            Path target = dest.resolve(relative);
+            Path current = existing.remove(relative);
+
+            if (current != null && contentHash(stagedFile).equals(contentHash(current))) {
+                sync.unchanged++;
+            } else {
+                Files.createDirectories(target.getParent());
+                replaceAtomically(stagedFile, target);
+                sync.written++;
+            }
+        }
+
+        for (Path stale : existing.values()) {
+            Files.delete(stale);
+            sync.deleted++;
+        }
+
+        return sync;
+    }
+
+    int getWritten() {
+        return written;
+    }
+
+    int getUnchanged() {
+        return unchanged;
+    }
+
+    int getDeleted() {
+        return deleted;
+    }
+
+    private static void replaceAtomically(Path source, Path target) throws Exception {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            //staging lives on a different file store, copy alongside the target and rename from there
+            Path sibling = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.copy(source, sibling, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(sibling, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String contentHash(Path file) throws Exception {
+        return ParsedSchemaCache.contentHash(Files.readAllBytes(file));
+    }
+}
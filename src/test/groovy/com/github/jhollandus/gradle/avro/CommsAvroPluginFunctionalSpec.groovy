@@ -0,0 +1,106 @@
+package com.github.jhollandus.gradle.avro
+
+import org.gradle.testkit.runner.BuildResult
+import org.gradle.testkit.runner.GradleRunner
+import org.gradle.testkit.runner.TaskOutcome
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Runs the compiler tasks in isolated workers with an Avro version other than the plugin's, the module's Avro is
+ * resolved from maven central.
+ */
+class CommsAvroPluginFunctionalSpec extends Specification {
+    //enum defaults and message encoder accessors arrived after the Avro the plugin is built with
+    static final String AVRO_VERSION = '1.11.3'
+
+    @Rule
+    TemporaryFolder tmp = new TemporaryFolder()
+
+    File projectDir
+
+    void setup() {
+        projectDir = tmp.newFolder('schemas')
+        new File(projectDir, 'settings.gradle').text = "rootProject.name = 'schemas'"
+        File idlDir = new File(projectDir, 'src/avro/idl')
+        idlDir.mkdirs()
+        new File(idlDir, 'user.avdl').text = '''@namespace("com.example")
+protocol UserProtocol {
+  @embedded(true)
+  record CommsHeader {
+    union {null, string} id = null;
+  }
+
+  @embedded(true)
+  enum Kind { A, B } = B;
+
+  record UserCreated {
+    CommsHeader @required(true) header;
+    Kind @required(true) kind;
+  }
+}
+'''
+    }
+
+    @Unroll
+    void 'avroVersion selects the compiler of #isolation workers'() {
+        given:
+        assert CommsAvroPlugin.pluginAvroVersion() != AVRO_VERSION
+        buildFile(isolation)
+
+        when:
+        BuildResult result = GradleRunner.create()
+                .withProjectDir(projectDir)
+                .withArguments('bindingAvroJava', '--stacktrace')
+                .build()
+
+        then:
+        result.task(':transformAvroIdl').outcome == TaskOutcome.SUCCESS
+        result.task(':bindingAvroJava').outcome == TaskOutcome.SUCCESS
+
+        and: 'the idl was parsed by a compiler that knows enum defaults'
+        new File(projectDir, 'src/avro/schema/UserCreated.avsc').text.contains('"default" : "B"')
+
+        and: 'the binding was generated from the templates of that compiler'
+        File binding = new File(projectDir, 'build/generated-src/avro/com/example/UserCreated.java')
+        binding.text.contains('public static BinaryMessageEncoder<UserCreated> getEncoder()')
+
+        where:
+        isolation << ['PROCESS', 'CLASSLOADER']
+    }
+
+    private void buildFile(String isolation) {
+        String pluginClasspath = pluginClasspath().collect { "'${it.absolutePath.replace('\\', '/')}'" }.join(', ')
+        new File(projectDir, 'build.gradle').text = """
+buildscript {
+    dependencies {
+        classpath files($pluginClasspath)
+    }
+}
+
+apply plugin: com.github.jhollandus.gradle.CommsGradlePlugin
+
+group = 'com.example'
+
+repositories {
+    mavenCentral()
+}
+
+model {
+    avro {
+        avroVersion = '$AVRO_VERSION'
+        compilerIsolation = org.gradle.workers.IsolationMode.$isolation
+        validation.enabled = false
+    }
+}
+"""
+    }
+
+    private List<File> pluginClasspath() {
+        Properties metadata = new Properties()
+        getClass().classLoader.getResourceAsStream('plugin-under-test-metadata.properties').withStream { metadata.load(it) }
+        metadata.getProperty('implementation-classpath').split(File.pathSeparator).collect { new File(it) }
+    }
+}
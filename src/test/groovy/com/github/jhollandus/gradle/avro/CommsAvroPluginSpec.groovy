@@ -0,0 +1,158 @@
+package com.github.jhollandus.gradle.avro
+
+import com.github.jhollandus.gradle.CommsGradlePlugin
+import com.github.jhollandus.gradle.avro.model.CommsAvroModel
+import com.github.jhollandus.gradle.avro.task.AvroSchemaToJava
+import org.gradle.api.JavaVersion
+import org.gradle.api.Project
+import org.gradle.api.artifacts.FileCollectionDependency
+import org.gradle.api.publish.PublishingExtension
+import org.gradle.api.publish.maven.MavenArtifact
+import org.gradle.api.publish.maven.MavenPublication
+import org.gradle.api.tasks.bundling.Jar
+import org.gradle.api.tasks.compile.JavaCompile
+import org.gradle.model.Mutate
+import org.gradle.model.RuleSource
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class CommsAvroPluginSpec extends Specification {
+
+    @Rule
+    TemporaryFolder tmp = new TemporaryFolder()
+
+    Project project
+
+    void setup() {
+        project = ProjectBuilder.builder().withProjectDir(tmp.newFolder('schemas')).withName('schemas').build()
+        project.group = 'com.example'
+        project.version = '1.0.0'
+    }
+
+    void 'generated bindings are compiled and published as their own jar'() {
+        given:
+        project.pluginManager.apply('java')
+        project.pluginManager.apply('maven-publish')
+        project.sourceCompatibility = '1.7'
+        project.targetCompatibility = '1.7'
+        project.pluginManager.apply(CommsGradlePlugin)
+        File generated = generatedSource()
+
+        when:
+        realizeTasks()
+        JavaCompile compileAvroJava = project.tasks.getByName('compileAvroJava') as JavaCompile
+        Jar jarAvroJava = project.tasks.getByName('jarAvroJava') as Jar
+        JavaCompile compileJava = project.tasks.getByName('compileJava') as JavaCompile
+
+        then:
+        compileAvroJava.enabled
+        compileAvroJava.source.files == [generated] as Set
+        compileAvroJava.sourceCompatibility == '1.7'
+        compileAvroJava.targetCompatibility == '1.7'
+        jarAvroJava.enabled
+        jarAvroJava.classifier == CommsAvroPlugin.BINDING_CLASSIFIER
+
+        and: 'hand written code compiles against the jar instead of the generated sources'
+        compileJava.classpath.files.contains(jarAvroJava.archivePath)
+        !compileJava.source.files.contains(generated)
+        dependencyNames(compileJava).containsAll(['jarAvroJava', 'zipAvroSchema'])
+
+        and:
+        runtimeFiles().contains(jarAvroJava.archivePath)
+        publishedArtifacts()*.classifier.contains(CommsAvroPlugin.BINDING_CLASSIFIER)
+    }
+
+    void 'without the java plugin the bindings target the running jvm'() {
+        given:
+        project.pluginManager.apply(CommsGradlePlugin)
+
+        when:
+        realizeTasks()
+        JavaCompile compileAvroJava = project.tasks.getByName('compileAvroJava') as JavaCompile
+
+        then:
+        compileAvroJava.sourceCompatibility == JavaVersion.current().toString()
+        compileAvroJava.targetCompatibility == JavaVersion.current().toString()
+    }
+
+    void 'disabled bindings are neither compiled, put on the classpath nor published'() {
+        given:
+        project.pluginManager.apply('java')
+        project.pluginManager.apply('maven-publish')
+        project.pluginManager.apply(CommsGradlePlugin)
+        project.pluginManager.apply(DisableBindings)
+        File generated = generatedSource()
+
+        when:
+        realizeTasks()
+        Jar jarAvroJava = project.tasks.getByName('jarAvroJava') as Jar
+        JavaCompile compileJava = project.tasks.getByName('compileJava') as JavaCompile
+
+        then:
+        !project.tasks.getByName('bindingAvroJava').enabled
+        !project.tasks.getByName('compileAvroJava').enabled
+        !jarAvroJava.enabled
+
+        and:
+        !compileJava.classpath.files.contains(jarAvroJava.archivePath)
+        !compileJava.source.files.contains(generated)
+        !dependencyNames(compileJava).contains('jarAvroJava')
+        dependencyNames(compileJava).contains('zipAvroSchema')
+
+        and:
+        !runtimeFiles().contains(jarAvroJava.archivePath)
+        !publishedArtifacts()*.classifier.contains(CommsAvroPlugin.BINDING_CLASSIFIER)
+        publishedArtifacts()*.extension.contains('zip')
+    }
+
+    void 'the default registry class is a valid java name for any group and project name'() {
+        given:
+        Project numbered = ProjectBuilder.builder().withProjectDir(tmp.newFolder('numbered')).withName('123-schemas').build()
+        numbered.group = 'com.3m.int'
+        numbered.pluginManager.apply(CommsGradlePlugin)
+
+        when:
+        numbered.evaluate()
+        numbered.tasks.realize()
+
+        then:
+        (numbered.tasks.getByName('bindingAvroJava') as AvroSchemaToJava).registryClass == 'com._3m._int._123SchemasAvroRegistry'
+    }
+
+    static class DisableBindings extends RuleSource {
+        @Mutate
+        void disableBindings(CommsAvroModel model) {
+            model.bindings.enabled = false
+        }
+    }
+
+    private File generatedSource() {
+        File generated = new File(CommsGradlePlugin.getGeneratedDir(project.buildDir, 'avro'), 'com/example/Foo.java')
+        generated.parentFile.mkdirs()
+        generated.text = 'package com.example; public class Foo {}'
+        generated
+    }
+
+    private void realizeTasks() {
+        project.evaluate()
+        project.tasks.realize()
+    }
+
+    private static Set<String> dependencyNames(JavaCompile compile) {
+        compile.taskDependencies.getDependencies(compile)*.name as Set
+    }
+
+    private Set<File> runtimeFiles() {
+        project.configurations.getByName('runtime').dependencies
+                .withType(FileCollectionDependency)
+                .collectMany { it.resolve() } as Set
+    }
+
+    private List<MavenArtifact> publishedArtifacts() {
+        project.extensions.getByType(PublishingExtension).publications
+                .withType(MavenPublication)
+                .collectMany { it.artifacts as List }
+    }
+}
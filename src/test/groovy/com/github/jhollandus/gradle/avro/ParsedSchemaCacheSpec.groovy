@@ -0,0 +1,73 @@
+package com.github.jhollandus.gradle.avro
+
+import org.apache.avro.Schema
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class ParsedSchemaCacheSpec extends Specification {
+
+    @Rule
+    TemporaryFolder tmp = new TemporaryFolder()
+
+    void 'files with the same content are parsed once per build'() {
+        given:
+        Project project = ProjectBuilder.builder().withProjectDir(tmp.newFolder('root')).build()
+        Project sub = ProjectBuilder.builder().withParent(project).withName('sub').build()
+        File first = tmp.newFile('First.avsc')
+        File second = tmp.newFile('Second.avsc')
+        first.text = second.text = '{"type": "record", "name": "Foo", "fields": []}'
+
+        when:
+        ParsedSchemaCache cache = ParsedSchemaCache.forProject(project)
+
+        then:
+        cache.parse(first).is(cache.parse(second))
+        ParsedSchemaCache.forProject(sub).is(cache)
+    }
+
+    void 'every build has a cache of its own'() {
+        given:
+        Project project = ProjectBuilder.builder().withProjectDir(tmp.newFolder('first')).build()
+        Project other = ProjectBuilder.builder().withProjectDir(tmp.newFolder('second')).build()
+
+        expect:
+        !ParsedSchemaCache.forProject(project).is(ParsedSchemaCache.forProject(other))
+    }
+
+    void 'schemas registered as written are returned for files with that content'() {
+        given:
+        Schema schema = new Schema.Parser().parse('{"type": "record", "name": "Foo", "fields": []}')
+        File schemaFile = tmp.newFile('Foo.avsc')
+        schemaFile.text = schema.toString(true)
+        ParsedSchemaCache cache = new ParsedSchemaCache(2)
+
+        when:
+        cache.put(schemaFile.bytes, schema)
+
+        then:
+        cache.parse(schemaFile).is(schema)
+    }
+
+    void 'a bounded cache keeps the most recently used schemas'() {
+        given:
+        ParsedSchemaCache cache = new ParsedSchemaCache(2)
+        List<File> files = (1..3).collect { i ->
+            File schemaFile = tmp.newFile("Foo${i}.avsc")
+            schemaFile.text = """{"type": "record", "name": "Foo${i}", "fields": []}"""
+            schemaFile
+        }
+        Schema first = cache.parse(files[0])
+        Schema second = cache.parse(files[1])
+
+        when:
+        cache.parse(files[0])
+        cache.parse(files[2])
+
+        then:
+        cache.parse(files[0]).is(first)
+        !cache.parse(files[1]).is(second)
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.jhollandus.gradle.avro.task
+
+import org.apache.avro.Schema
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class AvroIdlToSchemataSpec extends Specification {
+    static final String COMMON = '''
+@embedded(true)
+record CommsHeader {
+  union {null, string} id = null;
+}
+'''
+
+    @Rule
+    TemporaryFolder tmp = new TemporaryFolder()
+
+    Project project
+    File idlDir
+    File schemaDir
+
+    void setup() {
+        project = ProjectBuilder.builder().withProjectDir(tmp.newFolder('schemas')).build()
+        idlDir = project.file('src/avro/idl')
+        idlDir.mkdirs()
+        schemaDir = project.file('src/avro/schema')
+        new File(idlDir, 'common.avdlf').text = COMMON
+    }
+
+    void 'a shared fragment without namespace is parsed into the namespace of each including file'() {
+        given:
+        idl('one.avdl', 'com.example.one', 'First', '@include("common.avdlf")')
+        idl('two.avdl', 'com.example.two', 'Second', '@include("common.avdlf")')
+
+        when:
+        transformTask(true).transform()
+
+        then:
+        !sharedIdl('First').contains('record CommsHeader')
+        !sharedIdl('Second').contains('record CommsHeader')
+        schema('First').getField('header').schema().fullName == 'com.example.one.CommsHeader'
+        schema('Second').getField('header').schema().fullName == 'com.example.two.CommsHeader'
+    }
+
+    void 'without shared fragments the fragment is included as text'() {
+        given:
+        idl('one.avdl', 'com.example.one', 'First', '@include("common.avdlf")')
+
+        when:
+        transformTask(false).transform()
+
+        then:
+        sharedIdl('First') == null
+        resolvedIdl('First').contains('record CommsHeader')
+        schema('First').getField('header').schema().fullName == 'com.example.one.CommsHeader'
+    }
+
+    void 'a fragment using types of the including file falls back to text'() {
+        given:
+        new File(idlDir, 'wrapper.avdlf').text = '''
+@embedded(true)
+record Wrapper {
+  union {null, Payload} payload = null;
+}
+'''
+        idl('one.avdl', 'com.example.one', 'First', '''@include("common.avdlf")
+  @embedded(true)
+  record Payload {
+    union {null, string} value = null;
+  }
+  @include("wrapper.avdlf")''', 'union {null, Wrapper} wrapper = null;')
+
+        when:
+        transformTask(true).transform()
+
+        then:
+        resolvedIdl('First').contains('record Wrapper')
+        schema('First').getField('wrapper').schema().types[1].fullName == 'com.example.one.Wrapper'
+    }
+
+    void 'nested fragments are parsed into the including namespace'() {
+        given:
+        new File(idlDir, 'inner.avdlf').text = '''
+@embedded(true)
+record Inner {
+  union {null, string} value = null;
+}
+'''
+        new File(idlDir, 'outer.avdlf').text = '''@include("inner.avdlf")
+@embedded(true)
+record Outer {
+  union {null, Inner} inner = null;
+}
+'''
+        idl('three.avdl', 'com.example.three', 'Third', '''@include("common.avdlf")
+  @include("outer.avdlf")''', 'union {null, Outer} outer = null;')
+
+        when:
+        transformTask(true).transform()
+
+        then:
+        !sharedIdl('Third').contains('record Outer')
+        Schema outer = schema('Third').getField('outer').schema().types[1]
+        outer.fullName == 'com.example.three.Outer'
+        outer.getField('inner').schema().types[1].fullName == 'com.example.three.Inner'
+    }
+
+    void 'files including shared fragments are parsed with the fragment types instead of the text'() {
+        given:
+        idl('one.avdl', 'com.example.one', 'First', '@include("common.avdlf")')
+        transformTask(true).transform()
+        File staging = tmp.newFolder('staging')
+        IdlCompileSpec spec = new IdlCompileSpec()
+        spec.sourceFile = new File(idlDir, 'one.avdl')
+        spec.idlFile = new File(tmp.root, 'missing.avdl')
+        spec.sharedIdlFile = idlFile('First', /\d+-shared\.avdl/)
+        spec.fragments = [(new File(idlDir, 'common.avdlf').absoluteFile): idlFile('CommsHeader', /fragment\d+\.avdl/)]
+        spec.namespace = 'com.example.one'
+        spec.schemaDir = staging
+
+        when:
+        new IdlCompileWorker(spec).compile { content, schema -> }
+
+        then:
+        new File(staging, 'First.avsc').text == new File(schemaDir, 'First.avsc').text
+    }
+
+    private AvroIdlToSchemata transformTask(boolean sharedFragments) {
+        AvroIdlToSchemata task = project.tasks.create('transformAvroIdl', AvroIdlToSchemata)
+        task.source(idlDir)
+        task.dest = schemaDir
+        task.isolationMode = 'NONE'
+        task.compilerClasspath = project.files()
+        task.sharedFragments = sharedFragments
+        task
+    }
+
+    private void idl(String fileName, String namespace, String record, String includes, String fields = '') {
+        new File(idlDir, fileName).text = """@namespace("$namespace")
+protocol ${record}Protocol {
+  $includes
+
+  record $record {
+    CommsHeader @required(true) header;
+    $fields
+  }
+}
+"""
+    }
+
+    private String resolvedIdl(String record) {
+        idlFile(record, /\d+\.avdl/)?.text
+    }
+
+    private String sharedIdl(String record) {
+        idlFile(record, /\d+-shared\.avdl/)?.text
+    }
+
+    private File idlFile(String record, String pattern) {
+        new File(project.tasks.getByName('transformAvroIdl').temporaryDir, 'idl')
+                .listFiles()
+                .findAll { it.name ==~ pattern }
+                .find { it.text.contains("record $record ") || it.text.contains("record $record\n") }
+    }
+
+    private Schema schema(String record) {
+        new Schema.Parser().parse(new File(schemaDir, "${record}.avsc"))
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.jhollandus.gradle.avro.task
+
+import com.github.jhollandus.gradle.avro.AvroPluginUtils
+import com.github.jhollandus.gradle.avro.AvroValidationException
+import org.eclipse.jgit.api.Git
+import org.eclipse.jgit.lib.PersonIdent
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class AvroSchemaValidateSpec extends Specification {
+    static final String FOO_V1 = '''{"type": "record", "name": "Foo", "namespace": "com.example.foo", "fields": [
+        {"name": "a", "type": "int"}, {"name": "c", "type": "int"}]}'''
+    static final String FOO_V2 = '''{"type": "record", "name": "Foo", "namespace": "com.example.foo", "fields": [
+        {"name": "a", "type": "int"}]}'''
+    static final String BAR = '''{"type": "record", "name": "Bar", "namespace": "com.example.bar", "fields": [
+        {"name": "b", "type": "string"}]}'''
+
+    @Rule
+    TemporaryFolder tmp = new TemporaryFolder()
+
+    Project project
+    File schemaDir
+
+    void setup() {
+        project = ProjectBuilder.builder().withProjectDir(tmp.newFolder('schemas')).withName('schemas').build()
+        project.group = 'com.example'
+        schemaDir = project.file('src/avro/schema')
+        schemaDir.mkdirs()
+    }
+
+    void 'baseline zips from a directory reject a change incompatible with an older version when comparing all'() {
+        given:
+        File baselineDir = tmp.newFolder('baselines')
+        zip(new File(baselineDir, 'schemas-1.0.zip'), ['Foo.avsc': FOO_V1])
+        zip(new File(baselineDir, 'schemas-2.0.zip'), ['Foo.avsc': FOO_V2])
+        new File(schemaDir, 'Foo.avsc').text = FOO_V2
+
+        when:
+        validateTask(true, AvroPluginUtils.resolveBaselines(project, ['1.0', '2.0'], baselineDir)).validate()
+
+        then:
+        thrown(AvroValidationException)
+    }
+
+    void 'only the latest baseline is checked unless comparing all'() {
+        given:
+        File baselineDir = tmp.newFolder('baselines')
+        zip(new File(baselineDir, 'schemas-1.0.zip'), ['Foo.avsc': FOO_V1])
+        zip(new File(baselineDir, 'schemas-2.0.zip'), ['Foo.avsc': FOO_V2])
+        new File(schemaDir, 'Foo.avsc').text = FOO_V2
+
+        when:
+        validateTask(false, AvroPluginUtils.resolveBaselines(project, ['1.0', '2.0'], baselineDir)).validate()
+
+        then:
+        noExceptionThrown()
+    }
+
+    void 'schemas missing from a baseline are skipped'() {
+        given:
+        File baselineDir = tmp.newFolder('baselines')
+        zip(new File(baselineDir, 'schemas-1.0.zip'), ['Foo.avsc': FOO_V2])
+        File unpacked = new File(baselineDir, '2.0')
+        unpacked.mkdirs()
+        new File(unpacked, 'Foo.avsc').text = FOO_V2
+        new File(unpacked, 'Bar.avsc').text = BAR
+
+        new File(schemaDir, 'Foo.avsc').text = FOO_V2
+        new File(schemaDir, 'Bar.avsc').text = BAR
+
+        when:
+        validateTask(true, AvroPluginUtils.resolveBaselines(project, ['1.0', '2.0'], baselineDir)).validate()
+
+        then:
+        noExceptionThrown()
+    }
+
+    void 'baseline zips are resolved from a file based maven repository'() {
+        given:
+        File repo = tmp.newFolder('repo')
+        publish(repo, '1.0', ['Foo.avsc': FOO_V1])
+        publish(repo, '2.0', ['Foo.avsc': FOO_V2])
+        project.repositories.maven { url repo.toURI() }
+        new File(schemaDir, 'Foo.avsc').text = FOO_V2
+
+        when:
+        List<File> baselines = AvroPluginUtils.resolveBaselines(project, ['1.0', '2.0'], null)
+
+        then:
+        baselines*.name == ['schemas-1.0.zip', 'schemas-2.0.zip']
+
+        when:
+        validateTask(true, baselines).validate()
+
+        then:
+        thrown(AvroValidationException)
+    }
+
+    void 'baselines are not resolved when validating against git'() {
+        given:
+        AvroSchemaValidate task = validateTask(true, [])
+        task.baselines = project.files({ throw new IllegalStateException('resolved') })
+        task.baselineSource = AvroSchemaValidate.BaselineSource.GIT.name()
+
+        expect:
+        task.baselines.isEmpty()
+    }
+
+    void 'git history rejects a change incompatible only with an older tag when comparing all'() {
+        given:
+        tagHistory()
+
+        when:
+        gitValidateTask(true).validate()
+
+        then:
+        thrown(AvroValidationException)
+    }
+
+    void 'git history only checks the newest tag unless comparing all'() {
+        given:
+        tagHistory()
+
+        when:
+        gitValidateTask(false).validate()
+
+        then:
+        noExceptionThrown()
+    }
+
+    void 'git history accepts a change compatible with every tag'() {
+        given:
+        tagHistory()
+        new File(schemaDir, 'Foo.avsc').text = FOO_V1
+
+        when:
+        gitValidateTask(true).validate()
+
+        then:
+        noExceptionThrown()
+    }
+
+    /**
+     * v1 has Foo with field c, v2 drops it and v3/v4 repeat the v2 blob with unrelated changes. The working copy
+     * keeps the v2 schema so it is only incompatible with v1.
+     */
+    private void tagHistory() {
+        Git git = Git.init().setDirectory(project.projectDir).call()
+        File foo = new File(schemaDir, 'Foo.avsc')
+        File other = project.file('README')
+        long time = System.currentTimeMillis() - 3_600_000L
+
+        [FOO_V1, FOO_V2, FOO_V2, FOO_V2].eachWithIndex { String schema, int i ->
+            foo.text = schema
+            other.text = "revision $i"
+            git.add().addFilepattern('.').call()
+            PersonIdent ident = new PersonIdent('test', 'test@example.com', new Date(time + i * 60_000L), TimeZone.getTimeZone('UTC'))
+            git.commit().setMessage("v${i + 1}").setAuthor(ident).setCommitter(ident).call()
+            git.tag().setName("v${i + 1}").call()
+        }
+        git.close()
+    }
+
+    private AvroSchemaValidate gitValidateTask(boolean compareAll) {
+        AvroSchemaValidate task = project.tasks.create("validate${project.tasks.size()}", AvroSchemaValidate)
+        task.source(schemaDir)
+        task.compareAll = compareAll
+        task
+    }
+
+    private AvroSchemaValidate validateTask(boolean compareAll, List<File> baselines) {
+        AvroSchemaValidate task = project.tasks.create("validate${project.tasks.size()}", AvroSchemaValidate)
+        task.source(schemaDir)
+        task.compareAll = compareAll
+        task.baselineSource = AvroSchemaValidate.BaselineSource.ARTIFACT.name()
+        task.baselines = project.files(baselines)
+        task
+    }
+
+    private static void publish(File repo, String version, Map<String, String> schemas) {
+        File dir = new File(repo, "com/example/schemas/$version")
+        dir.mkdirs()
+        new File(dir, "schemas-${version}.pom").text = """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>com.example</groupId>
+  <artifactId>schemas</artifactId>
+  <version>$version</version>
+  <packaging>zip</packaging>
+</project>
+"""
+        zip(new File(dir, "schemas-${version}.zip"), schemas)
+    }
+
+    private static void zip(File target, Map<String, String> entries) {
+        target.withOutputStream { out ->
+            new ZipOutputStream(out).withStream { zip ->
+                entries.each { name, content ->
+                    zip.putNextEntry(new ZipEntry(name))
+                    zip.write(content.bytes)
+                    zip.closeEntry()
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.jhollandus.gradle.avro.task
+
+import org.apache.avro.Schema
+import org.apache.avro.SchemaNormalization
+import org.gradle.api.GradleException
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import javax.tools.JavaCompiler
+import javax.tools.ToolProvider
+
+class BindingRegistryGeneratorSpec extends Specification {
+    static final String REGISTRY = 'com.example.registry.SchemaRegistry'
+
+    @Rule
+    TemporaryFolder tmp = new TemporaryFolder()
+
+    File schemaDir
+    File outputDir
+
+    void setup() {
+        schemaDir = tmp.newFolder('schema')
+        outputDir = tmp.newFolder('java')
+    }
+
+    void 'the generated registry compiles with sorted fingerprints and constants for every top level record'() {
+        given:
+        List<File> schemaFiles = [
+                record('com.example', 'UserCreated'),
+                record('com.example', 'OrderPlaced'),
+                record('com.example.other', 'Thing'),
+                record('com.example', 'Header', true)
+        ]
+
+        when:
+        compileBindings(schemaFiles)
+        Class<?> registry = compileRegistry()
+
+        then:
+        int size = registry.size()
+        size == 3
+        List<Long> fingerprints = (0..<size).collect { registry.fingerprintAt(it) as Long }
+        fingerprints == fingerprints.toSorted()
+
+        and:
+        registry.COM_EXAMPLE_USER_CREATED_FINGERPRINT == fingerprint(schemaFiles[0])
+        registry.COM_EXAMPLE_ORDER_PLACED_FINGERPRINT == fingerprint(schemaFiles[1])
+        registry.COM_EXAMPLE_OTHER_THING_FINGERPRINT == fingerprint(schemaFiles[2])
+        registry.declaredFields.findAll { it.name.endsWith('_FINGERPRINT') }.size() == 3
+
+        and:
+        int index = registry.indexOf(fingerprint(schemaFiles[0]))
+        registry.classAt(index).name == 'com.example.UserCreated'
+        registry.indexOf(registry.classAt(index)) == index
+        registry.indexOf(String) < 0
+        registry.readerAt(index) != null
+        registry.writerAt(index) != null
+        registry.indexOf(42L) < 0
+    }
+
+    void 'records mapping to the same constant fail the build'() {
+        given:
+        BindingRegistryGenerator generator = new BindingRegistryGenerator(REGISTRY)
+        generator.add(parse(record('com.example', 'FooBar')))
+
+        when:
+        generator.add(parse(record('com.example', 'Foo_Bar')))
+
+        then:
+        GradleException e = thrown()
+        e.message.contains("'com.example.FooBar' and 'com.example.Foo_Bar'")
+        e.message.contains('COM_EXAMPLE_FOO_BAR_FINGERPRINT')
+    }
+
+    void 'records sharing a fingerprint fail the build'() {
+        given:
+        File schemaFile = record('com.example', 'UserCreated')
+        BindingRegistryGenerator generator = new BindingRegistryGenerator(REGISTRY)
+        generator.add(parse(schemaFile))
+
+        when:
+        generator.add(parse(schemaFile))
+
+        then:
+        GradleException e = thrown()
+        e.message.contains('share the fingerprint')
+    }
+
+    void 'records without namespace fail the build'() {
+        given:
+        BindingRegistryGenerator generator = new BindingRegistryGenerator(REGISTRY)
+
+        when:
+        generator.add(parse(record(null, 'UserCreated')))
+
+        then:
+        GradleException e = thrown()
+        e.message.contains("'UserCreated' has no namespace")
+    }
+
+    void 'registry class names that are not valid java fail the build'() {
+        when:
+        new BindingRegistryGenerator(registryClass)
+
+        then:
+        thrown(GradleException)
+
+        where:
+        registryClass << ['com.3m.SchemaRegistry', 'com.example.123SchemasAvroRegistry', 'com.example.int.SchemaRegistry']
+    }
+
+    private File record(String namespace, String name, boolean embedded = false) {
+        File schemaFile = new File(schemaDir, "${namespace ? namespace + '.' : ''}${name}.avsc")
+        schemaFile.text = """{
+  "type": "record",
+  ${namespace ? '"namespace": "' + namespace + '",' : ''}
+  "name": "$name",
+  ${embedded ? '"embedded": true,' : ''}
+  "fields": [{"name": "id", "type": ["null", "string"], "default": null}]
+}"""
+        schemaFile
+    }
+
+    private static Schema parse(File schemaFile) {
+        new Schema.Parser().parse(schemaFile)
+    }
+
+    private static long fingerprint(File schemaFile) {
+        SchemaNormalization.parsingFingerprint64(parse(schemaFile))
+    }
+
+    private void compileBindings(List<File> schemaFiles) {
+        SpecificCompileSpec spec = new SpecificCompileSpec()
+        spec.schemaFiles = schemaFiles
+        spec.outputDir = outputDir
+        spec.stringType = 'String'
+        spec.fieldVisibility = 'PRIVATE'
+        spec.createSetters = true
+        spec.outputCharacterEncoding = 'UTF-8'
+        spec.registryClass = REGISTRY
+        new SpecificCompileWorker(spec).run()
+    }
+
+    private Class<?> compileRegistry() {
+        File classesDir = tmp.newFolder('classes')
+        List<String> sources = []
+        outputDir.eachFileRecurse { if (it.name.endsWith('.java')) sources << it.path }
+
+        JavaCompiler javac = ToolProvider.systemJavaCompiler
+        int result = javac.run(null, null, null,
+                ['-classpath', System.getProperty('java.class.path'), '-d', classesDir.path] + sources as String[])
+        assert result == 0
+
+        new URLClassLoader([classesDir.toURI().toURL()] as URL[], getClass().classLoader).loadClass(REGISTRY)
+    }
+}
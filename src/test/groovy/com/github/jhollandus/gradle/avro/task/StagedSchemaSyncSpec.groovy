@@ -0,0 +1,69 @@
+package com.github.jhollandus.gradle.avro.task
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class StagedSchemaSyncSpec extends Specification {
+
+    @Rule
+    TemporaryFolder tmp = new TemporaryFolder()
+
+    File staging
+    File dest
+    FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 86_400_000L)
+
+    void setup() {
+        staging = tmp.newFolder('staging')
+        dest = tmp.newFolder('dest')
+    }
+
+    void 'only changed schemas are written and stale schemas are deleted'() {
+        given:
+        existing('Same.avsc', '{"type": "string"}')
+        existing('Changed.avsc', '{"type": "int"}')
+        existing('Stale.avsc', '{"type": "long"}')
+        new File(staging, 'Same.avsc').text = '{"type": "string"}'
+        new File(staging, 'Changed.avsc').text = '{"type": "double"}'
+        new File(staging, 'Added.avsc').text = '{"type": "boolean"}'
+
+        when:
+        StagedSchemaSync sync = StagedSchemaSync.sync(staging.toPath(), dest.toPath())
+
+        then:
+        sync.written == 2
+        sync.unchanged == 1
+        sync.deleted == 1
+
+        and: 'the unchanged file keeps its timestamp'
+        Files.getLastModifiedTime(new File(dest, 'Same.avsc').toPath()) == past
+
+        and: 'the changed file is replaced'
+        new File(dest, 'Changed.avsc').text == '{"type": "double"}'
+        new File(dest, 'Added.avsc').text == '{"type": "boolean"}'
+
+        and: 'the stale file is gone'
+        !new File(dest, 'Stale.avsc').exists()
+    }
+
+    void 'files other than schemas are left in the destination'() {
+        given:
+        existing('notes.txt', 'keep me')
+
+        when:
+        StagedSchemaSync sync = StagedSchemaSync.sync(staging.toPath(), dest.toPath())
+
+        then:
+        sync.deleted == 0
+        new File(dest, 'notes.txt').exists()
+    }
+
+    private void existing(String name, String content) {
+        File file = new File(dest, name)
+        file.text = content
+        Files.setLastModifiedTime(file.toPath(), past)
+    }
+}